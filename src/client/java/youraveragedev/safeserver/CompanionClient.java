@@ -0,0 +1,72 @@
+package youraveragedev.safeserver;
+
+import net.fabricmc.fabric.api.client.networking.v1.ClientLoginNetworking;
+import net.fabricmc.fabric.api.client.networking.v1.ClientPlayNetworking;
+import net.fabricmc.fabric.api.networking.v1.PacketByteBufs;
+import net.fabricmc.loader.api.FabricLoader;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.network.ServerInfo;
+import net.minecraft.network.PacketByteBuf;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import youraveragedev.safeserver.auth.CompanionAuthenticator;
+import youraveragedev.safeserver.network.CompanionProtocol;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 客户端伴随模组：保存服务器在游戏内认证成功后发来的伴随密钥，
+ * 之后登录同一服务器时自动应答登录阶段的挑战，无需再输入 /login。
+ * 没有对应密钥时回复“不理解”，服务器照常进行游戏内认证。
+ */
+final class CompanionClient {
+	private static final Logger LOGGER = LoggerFactory.getLogger("safeserver-companion-client");
+
+	private final CompanionKeyStore keys;
+
+	private CompanionClient(CompanionKeyStore keys) {
+		this.keys = keys;
+	}
+
+	static void register() {
+		CompanionKeyStore keys = new CompanionKeyStore(FabricLoader.getInstance().getConfigDir().resolve("safeserver-companion.json"));
+		keys.load();
+		CompanionClient companion = new CompanionClient(keys);
+
+		ClientLoginNetworking.registerGlobalReceiver(CompanionProtocol.LOGIN_CHANNEL,
+				(client, handler, buf, callbacksConsumer) -> companion.answerChallenge(client, buf));
+		ClientPlayNetworking.registerGlobalReceiver(CompanionProtocol.KeyPayload.ID,
+				(payload, context) -> companion.storeKey(context.client(), payload.key()));
+	}
+
+	// 网络线程：用保存的密钥对挑战作答
+	private CompletableFuture<PacketByteBuf> answerChallenge(MinecraftClient client, PacketByteBuf buf) {
+		UUID playerUuid = buf.readUuid();
+		byte[] nonce = buf.readByteArray(CompanionAuthenticator.NONCE_LENGTH);
+		String serverAddress = currentServerAddress(client);
+		byte[] key = serverAddress != null ? keys.get(serverAddress, playerUuid) : null;
+		if (key == null) {
+			return CompletableFuture.completedFuture(null);
+		}
+		PacketByteBuf response = PacketByteBufs.create();
+		response.writeByteArray(CompanionAuthenticator.answer(key, playerUuid, nonce));
+		return CompletableFuture.completedFuture(response);
+	}
+
+	// 客户端线程：认证成功或改密后服务器发来新的密钥
+	private void storeKey(MinecraftClient client, byte[] key) {
+		String serverAddress = currentServerAddress(client);
+		if (serverAddress == null || client.player == null) {
+			return;
+		}
+		keys.put(serverAddress, client.player.getUuid(), key);
+		LOGGER.info("已保存服务器 {} 的伴随密钥，下次登录将自动认证。", serverAddress);
+	}
+
+	// 单人游戏没有服务器条目，不使用伴随握手
+	private static String currentServerAddress(MinecraftClient client) {
+		ServerInfo server = client.getCurrentServerEntry();
+		return server != null ? server.address : null;
+	}
+}
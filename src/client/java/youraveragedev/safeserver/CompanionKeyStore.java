@@ -0,0 +1,90 @@
+package youraveragedev.safeserver;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 客户端保存的伴随密钥，按服务器地址与玩家 UUID 区分，以 Base64 写入 config/safeserver-companion.json。
+ * 登录阶段的挑战在网络线程上应答，密钥表须可并发读取。
+ */
+final class CompanionKeyStore {
+	private static final Logger LOGGER = LoggerFactory.getLogger("safeserver-companion-client");
+	private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+	private final Path file;
+	private final Map<String, String> keys = new ConcurrentHashMap<>();
+
+	CompanionKeyStore(Path file) {
+		this.file = file;
+	}
+
+	void load() {
+		if (!Files.exists(file)) {
+			return;
+		}
+		try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			Map<String, String> loaded = GSON.fromJson(reader, new TypeToken<Map<String, String>>() {}.getType());
+			if (loaded != null) {
+				keys.putAll(loaded);
+			}
+		} catch (IOException | JsonParseException e) {
+			LOGGER.error("读取伴随密钥文件 {} 失败：{}", file, e.getMessage());
+		}
+	}
+
+	byte[] get(String serverAddress, UUID playerUuid) {
+		String encoded = keys.get(entryKey(serverAddress, playerUuid));
+		if (encoded == null) {
+			return null;
+		}
+		try {
+			return Base64.getDecoder().decode(encoded);
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	void put(String serverAddress, UUID playerUuid, byte[] key) {
+		String encoded = Base64.getEncoder().encodeToString(key);
+		if (encoded.equals(keys.put(entryKey(serverAddress, playerUuid), encoded))) {
+			return;
+		}
+		save();
+	}
+
+	// 先写临时文件再原子替换，避免写入中途退出导致文件损坏
+	private synchronized void save() {
+		try {
+			Files.createDirectories(file.getParent());
+			Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+			try (Writer writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+				GSON.toJson(new TreeMap<>(keys), writer);
+			}
+			Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			LOGGER.error("保存伴随密钥文件 {} 失败：{}", file, e.getMessage());
+		}
+	}
+
+	private static String entryKey(String serverAddress, UUID playerUuid) {
+		return serverAddress.toLowerCase(Locale.ROOT) + "|" + playerUuid;
+	}
+}
@@ -5,6 +5,7 @@ import net.fabricmc.api.ClientModInitializer;
 public class SafeserverClient implements ClientModInitializer {
 	@Override
 	public void onInitializeClient() {
-		// This entrypoint is suitable for setting up client-specific logic, such as rendering.
+		// 客户端伴随模组：自动应答安装了 SafeServer 的服务器的登录阶段挑战
+		CompanionClient.register();
 	}
 }
\ No newline at end of file
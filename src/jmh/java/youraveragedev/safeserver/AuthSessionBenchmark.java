@@ -0,0 +1,168 @@
+package youraveragedev.safeserver;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import youraveragedev.safeserver.gate.AuthGate;
+import youraveragedev.safeserver.platform.PlayerHandle;
+import youraveragedev.safeserver.platform.PlayerSnapshot;
+import youraveragedev.safeserver.platform.SpawnPoint;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一次完整认证会话在会话表上的开销：进入认证、提交密码进入校验、校验通过进入恢复、关闭会话。
+ * 不包含传送与游戏模式切换等需要服务器实例的操作；多线程变体模拟大量玩家同时加入。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class AuthSessionBenchmark {
+
+    // 表中同时存在的其他认证会话数
+    @Param({"0", "1000"})
+    public int background;
+
+    private static final SpawnPoint LIMBO = new SpawnPoint(0.5, 65.0, 0.5);
+
+    private final AuthSessionTable table = new AuthSessionTable();
+
+    @State(Scope.Thread)
+    public static class PlayerState {
+        private final FakePlayer[] players = new FakePlayer[256];
+        private int cursor;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            for (int i = 0; i < players.length; i++) {
+                players[i] = new FakePlayer(UUID.randomUUID());
+            }
+        }
+
+        private FakePlayer next() {
+            int index = (cursor + 1) & (players.length - 1);
+            cursor = index;
+            return players[index];
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        AuthGate.reset();
+        for (int i = 0; i < background; i++) {
+            table.open(session(UUID.randomUUID()), new FakePlayer(UUID.randomUUID()));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        AuthGate.reset();
+    }
+
+    private static AuthSession session(UUID uuid) {
+        return new AuthSession(uuid, AuthSession.State.PENDING_LOGIN, null, null, System.nanoTime());
+    }
+
+    private boolean lifecycle(FakePlayer player) {
+        AuthSession opened = session(player.uuid);
+        if (!table.open(opened, player)) {
+            return false;
+        }
+        AuthSession applied = opened.withFreezePosition(LIMBO);
+        table.replace(opened, applied);
+        table.beginVerification(player.uuid);
+        AuthSession restoring = table.markRestoring(player.uuid);
+        return table.close(restoring, player);
+    }
+
+    @Benchmark
+    public boolean sessionLifecycle(PlayerState state) {
+        return lifecycle(state.next());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean sessionLifecycleContended(PlayerState state) {
+        return lifecycle(state.next());
+    }
+
+    // 只有认证标记参与会话表操作，其余玩家操作为空实现
+    private static final class FakePlayer implements PlayerHandle {
+        private final UUID uuid;
+        private volatile boolean gated;
+
+        private FakePlayer(UUID uuid) {
+            this.uuid = uuid;
+        }
+
+        @Override
+        public UUID getUuid() {
+            return uuid;
+        }
+
+        @Override
+        public String getName() {
+            return uuid.toString();
+        }
+
+        @Override
+        public String getAddress() {
+            return null;
+        }
+
+        @Override
+        public Object getConnection() {
+            return this;
+        }
+
+        @Override
+        public boolean isOperator() {
+            return false;
+        }
+
+        @Override
+        public void sendMessage(String message) {
+        }
+
+        @Override
+        public boolean isAuthGated() {
+            return gated;
+        }
+
+        @Override
+        public void setAuthGated(boolean gated) {
+            this.gated = gated;
+        }
+
+        @Override
+        public PlayerSnapshot captureState() {
+            return null;
+        }
+
+        @Override
+        public void enterLimbo(SpawnPoint limbo) {
+        }
+
+        @Override
+        public boolean restoreState(PlayerSnapshot original) {
+            return true;
+        }
+
+        @Override
+        public void refreshCommandTree() {
+        }
+
+        @Override
+        public void sendCompanionKey(byte[] key) {
+        }
+    }
+}
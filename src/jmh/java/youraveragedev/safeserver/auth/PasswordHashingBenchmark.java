@@ -0,0 +1,59 @@
+package youraveragedev.safeserver.auth;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import youraveragedev.safeserver.storage.Credential;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 密码哈希与校验的单次耗时。AuthService.hashPassword / verifyPassword 直接委托给 PasswordHashingEngine，
+ * 这里绕过服务器实例直接测量引擎；迭代次数覆盖最低值和典型的校准结果。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+public class PasswordHashingBenchmark {
+
+    @Param({"10000", "100000"})
+    public int iterations;
+
+    private PasswordHashingEngine engine;
+    private Credential stored;
+    private Credential legacy;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        engine = new PasswordHashingEngine(iterations);
+        stored = engine.hash("correct horse battery staple");
+        legacy = new Sha256PasswordHasher().create("correct horse battery staple");
+    }
+
+    @Benchmark
+    public Credential hash() {
+        return engine.hash("correct horse battery staple");
+    }
+
+    @Benchmark
+    public boolean verifyCorrect() {
+        return engine.verify(stored, "correct horse battery staple");
+    }
+
+    @Benchmark
+    public boolean verifyWrong() {
+        return engine.verify(stored, "incorrect horse battery staple");
+    }
+
+    // 旧版无盐 SHA-256 凭据的校验开销，用于对比
+    @Benchmark
+    public boolean verifyLegacy() {
+        return engine.verify(legacy, "correct horse battery staple");
+    }
+}
@@ -0,0 +1,95 @@
+package youraveragedev.safeserver.gate;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 每次游戏行为回调的拦截检查开销。
+ * mapLookup 对应原先按 UUID 查询会话表的做法，gateCheck 为实体标记快速路径。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class AuthGateBenchmark {
+
+    @Param({"0", "4"})
+    public int authenticating;
+
+    @Param({"100"})
+    public int online;
+
+    private final ConcurrentHashMap<UUID, Object> sessions = new ConcurrentHashMap<>();
+    private FakePlayer[] players;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        AuthGate.reset();
+        players = new FakePlayer[online];
+        for (int i = 0; i < online; i++) {
+            players[i] = new FakePlayer(UUID.randomUUID());
+        }
+        // 认证中的玩家分散在在线列表中
+        for (int i = 0; i < authenticating; i++) {
+            FakePlayer player = players[i * (online / authenticating)];
+            sessions.put(player.uuid, Boolean.TRUE);
+            AuthGate.enter();
+            player.safeserver$setAuthGated(true);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        AuthGate.reset();
+    }
+
+    private FakePlayer next() {
+        int index = cursor + 1;
+        if (index == players.length) {
+            index = 0;
+        }
+        cursor = index;
+        return players[index];
+    }
+
+    @Benchmark
+    public boolean mapLookup() {
+        return sessions.containsKey(next().uuid);
+    }
+
+    @Benchmark
+    public boolean gateCheck() {
+        return AuthGate.isGated(next());
+    }
+
+    private static final class FakePlayer implements AuthGatedPlayer {
+        private final UUID uuid;
+        private volatile boolean gated;
+
+        private FakePlayer(UUID uuid) {
+            this.uuid = uuid;
+        }
+
+        @Override
+        public boolean safeserver$isAuthGated() {
+            return gated;
+        }
+
+        @Override
+        public void safeserver$setAuthGated(boolean gated) {
+            this.gated = gated;
+        }
+    }
+}
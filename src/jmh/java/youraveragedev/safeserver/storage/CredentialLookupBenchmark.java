@@ -0,0 +1,99 @@
+package youraveragedev.safeserver.storage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 玩家加入时的凭据查询开销（contains / get），对比 JSON 快照后端与内存映射后端。
+ * 查询序列中偶数位为已注册玩家（账户数不足时以新玩家补齐），其余为新玩家。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class CredentialLookupBenchmark {
+
+    private static final int PROBES = 4096;
+
+    @Param({"json", "mapped"})
+    public String backend;
+
+    @Param({"1000", "100000", "1000000"})
+    public int accounts;
+
+    private Path directory;
+    private CredentialStore store;
+    private UUID[] probes;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("safeserver-bench");
+        Path passwordFile = directory.resolve("passwords.json");
+        CredentialStoreBenchmark.writePasswordFile(passwordFile, accounts, new Random(42));
+
+        store = switch (backend) {
+            case "mapped" -> new MappedCredentialStore(directory.resolve("credentials.bin"), passwordFile, 0L);
+            default -> new JournaledCredentialStore(passwordFile, 0L);
+        };
+        // 内存映射后端首次加载时从 passwords.json 迁移
+        store.load();
+
+        // 以相同种子重放生成序列得到已注册的 UUID
+        Random registered = new Random(42);
+        byte[] skip = new byte[Credential.MAX_SALT_LENGTH + Credential.HASH_LENGTH];
+        Random unknown = new Random(7);
+        probes = new UUID[PROBES];
+        for (int i = 0; i < PROBES; i++) {
+            if (i % 2 == 0 && i / 2 < accounts) {
+                registered.nextBytes(skip);
+                probes[i] = new UUID(registered.nextLong(), registered.nextLong());
+            } else {
+                probes[i] = new UUID(unknown.nextLong(), unknown.nextLong());
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        store.flush();
+        store.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    private UUID next() {
+        int index = (cursor + 1) & (PROBES - 1);
+        cursor = index;
+        return probes[index];
+    }
+
+    @Benchmark
+    public boolean contains() {
+        return store.contains(next());
+    }
+
+    @Benchmark
+    public Credential get() {
+        return store.get(next());
+    }
+}
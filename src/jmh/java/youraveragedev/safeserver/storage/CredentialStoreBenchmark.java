@@ -0,0 +1,97 @@
+package youraveragedev.safeserver.storage;
+
+import com.google.gson.stream.JsonWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 服务器启动时加载 passwords.json 与完整写出快照的耗时，按账户数分档。
+ * 每次调用都是冷的一次性操作，因此使用 SingleShotTime；配合 gc 分析器可看到加载过程的分配量。
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class CredentialStoreBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int accounts;
+
+    private Path directory;
+    private Path passwordFile;
+    private JournaledCredentialStore store;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("safeserver-bench");
+        passwordFile = directory.resolve("passwords.json");
+        writePasswordFile(passwordFile, accounts, new Random(42));
+    }
+
+    // 每次调用使用新的存储实例，load 不会叠加在已有数据上
+    @Setup(Level.Invocation)
+    public void freshStore() {
+        store = new JournaledCredentialStore(passwordFile, 0L);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    @Benchmark
+    public int load() {
+        store.load();
+        return store.size();
+    }
+
+    // 包含一次加载，按加载基准的结果扣除即为快照写出本身的耗时
+    @Benchmark
+    public boolean loadAndSave() {
+        store.load();
+        return store.savePasswordsSync();
+    }
+
+    static void writePasswordFile(Path path, int accounts, Random random) throws IOException {
+        byte[] salt = new byte[Credential.MAX_SALT_LENGTH];
+        byte[] hash = new byte[Credential.HASH_LENGTH];
+        try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+             JsonWriter json = new JsonWriter(writer)) {
+            json.setIndent("  ");
+            json.beginObject();
+            for (int i = 0; i < accounts; i++) {
+                random.nextBytes(salt);
+                random.nextBytes(hash);
+                json.name(new UUID(random.nextLong(), random.nextLong()).toString())
+                    .value(Credential.pbkdf2Sha256(100_000, salt, hash).toStorageString());
+            }
+            json.endObject();
+        }
+    }
+}
@@ -0,0 +1,447 @@
+package youraveragedev.safeserver;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import youraveragedev.safeserver.auth.AuthPipeline;
+import youraveragedev.safeserver.auth.CompanionAuthenticator;
+import youraveragedev.safeserver.auth.LoginThrottle;
+import youraveragedev.safeserver.auth.PasswordHashingEngine;
+import youraveragedev.safeserver.auth.SessionTicketCache;
+import youraveragedev.safeserver.metrics.SafeserverMetrics;
+import youraveragedev.safeserver.platform.PlayerHandle;
+import youraveragedev.safeserver.platform.ServerFacade;
+import youraveragedev.safeserver.storage.Credential;
+import youraveragedev.safeserver.storage.CredentialStore;
+
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * 认证核心：加入与断开处理、注册、登录、改密与重置。
+ * 只依赖 {@link ServerFacade} 与 {@link PlayerHandle}，不引用任何 Minecraft 类，
+ * 因此既由模组在游戏内驱动，也可以在负载模拟中脱离服务器运行。
+ * 除哈希外的所有方法都应在服务器线程上调用。
+ */
+public class AuthService {
+    private static final Logger LOGGER = LoggerFactory.getLogger("safeserver-auth");
+
+    private final CredentialStore credentialStore;
+    private final PlayerStateManager stateManager;
+    private final JoinAdmissionQueue admissionQueue;
+    private final AuthPipeline authPipeline;
+    private final PasswordHashingEngine hashingEngine;
+    private final LoginThrottle loginThrottle;
+    private final SessionTicketCache sessionTickets;
+    // 客户端伴随模组的登录阶段握手，未启用时为 null
+    private final CompanionAuthenticator companion;
+    private final ServerFacade server;
+
+    public AuthService(CredentialStore credentialStore, PlayerStateManager stateManager, JoinAdmissionQueue admissionQueue,
+                       AuthPipeline authPipeline, PasswordHashingEngine hashingEngine, LoginThrottle loginThrottle,
+                       SessionTicketCache sessionTickets, CompanionAuthenticator companion, ServerFacade server) {
+        this.credentialStore = credentialStore;
+        this.stateManager = stateManager;
+        this.admissionQueue = admissionQueue;
+        this.authPipeline = authPipeline;
+        this.hashingEngine = hashingEngine;
+        this.loginThrottle = loginThrottle;
+        this.sessionTickets = sessionTickets;
+        this.companion = companion;
+        this.server = server;
+    }
+
+    public void onPlayerJoin(PlayerHandle player) {
+        UUID playerUuid = player.getUuid();
+        String playerName = player.getName();
+
+        LOGGER.info("玩家 {} ({}) 加入游戏，正在检查认证状态...", playerName, playerUuid);
+
+        if (stateManager.isPlayerAuthenticating(playerUuid)) {
+            return;
+        }
+        boolean hasPassword = credentialStore.contains(playerUuid);
+        if (hasPassword && companion != null && companion.consumeApproval(playerUuid, player.getConnection())) {
+            // 登录阶段已由伴随模组完成认证，不进入认证状态
+            LOGGER.info("玩家 {} 已在登录阶段通过伴随模组认证，跳过认证。", playerName);
+            player.sendMessage(SafeserverConstants.COMPANION_AUTHENTICATED_MESSAGE);
+            return;
+        }
+        if (hasPassword && sessionTickets.consume(playerUuid, player.getAddress())) {
+            // 刚从同一地址认证过，直接恢复会话
+            LOGGER.info("玩家 {} 从同一地址快速重连，跳过认证。", playerName);
+            player.sendMessage(SafeserverConstants.SESSION_RESUMED_MESSAGE);
+            return;
+        }
+        if (hasPassword) {
+            // 老玩家需登录
+            LOGGER.info("玩家 {} 需要登录。", playerName);
+        } else {
+            // 新玩家需设置密码
+            LOGGER.info("玩家 {} 需要设置密码。", playerName);
+        }
+        stateManager.applyAuthenticationState(player, hasPassword);
+        stateManager.sendWelcomeMessages(player, hasPassword);
+    }
+
+    public void onPlayerDisconnect(PlayerHandle player) {
+        UUID playerUuid = player.getUuid();
+
+        // 已认证的玩家断开时签发快速重连票据
+        if (!stateManager.isPlayerAuthenticating(playerUuid) && credentialStore.contains(playerUuid)) {
+            sessionTickets.issue(playerUuid, player.getAddress());
+        }
+        stateManager.handlePlayerDisconnect(player);
+    }
+
+    // 每个 tick 结束时调用，在时间预算内处理入场队列
+    public void runAdmission() {
+        if (admissionQueue.size() > 0) {
+            long start = System.nanoTime();
+            admissionQueue.drain();
+            SafeserverMetrics.ADMISSION_TICK.record(System.nanoTime() - start);
+        }
+    }
+
+    // 服务器停止时等待所有待写入的凭据变更落盘，并丢弃只在本次运行中有效的状态
+    public void shutdown() {
+        credentialStore.flush();
+        credentialStore.close();
+        admissionQueue.clear();
+        authPipeline.clear();
+        sessionTickets.clear();
+        if (companion != null) {
+            companion.clear();
+        }
+    }
+
+    public void registerMetricGauges() {
+        SafeserverMetrics.registerGauge("safeserver_auth_sessions", "认证中的玩家数", stateManager::getSessionCount);
+        SafeserverMetrics.registerGauge("safeserver_admission_queue_depth", "入场队列待处理任务数", admissionQueue::size);
+        SafeserverMetrics.registerGauge("safeserver_auth_queue_depth", "等待哈希的认证任务数", authPipeline::getQueueDepth);
+        SafeserverMetrics.registerGauge("safeserver_io_pending_changes", "等待写入磁盘的凭据变更数", () -> credentialStore.getFlusher().getPendingCount());
+        SafeserverMetrics.registerGauge("safeserver_io_failed_flushes_total", "失败的刷盘次数", () -> credentialStore.getFlusher().getFailedFlushes());
+        SafeserverMetrics.registerGauge("safeserver_credentials", "已保存的密码数", () -> credentialStore.size());
+        SafeserverMetrics.registerGauge("safeserver_throttle_rate_limited_total", "因请求过于频繁被拒绝的认证请求", loginThrottle::getRateLimitedRejections);
+        SafeserverMetrics.registerGauge("safeserver_throttle_backoff_total", "因密码错误退避被拒绝的认证请求", loginThrottle::getBackoffRejections);
+        SafeserverMetrics.registerGauge("safeserver_auth_rejected_busy_total", "因认证队列已满被拒绝的请求", authPipeline::getRejectedQueueFull);
+        SafeserverMetrics.registerGauge("safeserver_session_resumed_total", "通过快速重连跳过认证的次数", sessionTickets::getResumedCount);
+        if (companion != null) {
+            SafeserverMetrics.registerGauge("safeserver_companion_accepted_total", "通过伴随模组登录阶段握手的次数", companion::getAcceptedCount);
+            SafeserverMetrics.registerGauge("safeserver_companion_rejected_total", "伴随模组应答校验失败的次数", companion::getRejectedCount);
+            SafeserverMetrics.registerGauge("safeserver_companion_unsupported_total", "客户端未安装伴随模组或没有密钥的次数", companion::getUnsupportedCount);
+        }
+    }
+
+    public int getCredentialCount() {
+        return credentialStore.size();
+    }
+
+    public int getSessionCount() {
+        return stateManager.getSessionCount();
+    }
+
+    // 使用当前哈希算法为密码生成凭据，失败时返回 null
+    public Credential hashPassword(String password) {
+        long start = System.nanoTime();
+        try {
+            return hashingEngine.hash(password);
+        } catch (RuntimeException e) {
+            LOGGER.error("密码哈希计算失败。", e);
+            return null;
+        } finally {
+            SafeserverMetrics.HASH_LATENCY.record(System.nanoTime() - start);
+        }
+    }
+
+    // 按凭据记录的算法与参数校验密码
+    public boolean verifyPassword(Credential storedCredential, String password) {
+        long start = System.nanoTime();
+        try {
+            return hashingEngine.verify(storedCredential, password);
+        } catch (RuntimeException e) {
+            LOGGER.error("密码校验失败。", e);
+            return false;
+        } finally {
+            SafeserverMetrics.VERIFY_LATENCY.record(System.nanoTime() - start);
+        }
+    }
+
+    // 登录校验结果；upgradedCredential 非 null 时表示旧凭据已按当前算法重新哈希
+    private record LoginVerification(boolean matched, Credential upgradedCredential) {
+    }
+
+    // 认证接口方法
+
+    public boolean isPlayerAuthenticating(UUID playerUuid) {
+        return stateManager.isPlayerAuthenticating(playerUuid);
+    }
+
+    public boolean hasPassword(UUID playerUuid) {
+        return credentialStore.contains(playerUuid);
+    }
+
+    public boolean isCompanionHandshakeEnabled() {
+        return companion != null;
+    }
+
+    // 为已设置密码的玩家生成登录阶段挑战；未启用握手或玩家尚未设置密码时返回 null
+    public byte[] newCompanionChallenge(UUID playerUuid) {
+        if (companion == null || !credentialStore.contains(playerUuid)) {
+            return null;
+        }
+        return companion.newChallenge(playerUuid);
+    }
+
+    public void recordCompanionUnsupported(UUID playerUuid) {
+        if (companion != null) {
+            companion.recordUnsupported(playerUuid);
+        }
+    }
+
+    // 登录阶段断开的连接不会进入游戏，作废它可能已取得的许可
+    public void discardCompanionApproval(UUID playerUuid, Object connection) {
+        if (companion != null) {
+            companion.discardApproval(playerUuid, connection);
+        }
+    }
+
+    // 登录阶段（玩家实体创建前）校验伴随模组对挑战的应答，与密码登录共用限流；通过后同一连接加入时跳过认证
+    public boolean verifyCompanionResponse(UUID playerUuid, String address, Object connection, byte[] nonce, byte[] response) {
+        Credential credential = credentialStore.get(playerUuid);
+        if (companion == null || credential == null || !admitAttempt(playerUuid, address)) {
+            return false;
+        }
+        if (!companion.verify(playerUuid, credential, nonce, response, connection)) {
+            // 通常是改密或重置后客户端仍持有旧密钥
+            loginThrottle.recordFailure(playerUuid, address);
+            LOGGER.info("玩家 {} 的伴随模组应答无效，改为游戏内认证。", playerUuid);
+            return false;
+        }
+        loginThrottle.recordSuccess(playerUuid);
+        return true;
+    }
+
+    // 以下方法在服务器线程捕获输入后把哈希交给认证流水线，结果在服务器线程通过 onComplete 回调
+
+    public AuthPipeline.Status registerPlayer(UUID playerUuid, String password, Executor serverExecutor, Consumer<Boolean> onComplete) {
+        if (hasPassword(playerUuid)) {
+            onComplete.accept(false);
+            return AuthPipeline.Status.ACCEPTED;
+        }
+        if (!admitAttempt(playerUuid, addressOf(playerUuid))) {
+            return AuthPipeline.Status.THROTTLED;
+        }
+        if (!stateManager.beginVerification(playerUuid)) {
+            return AuthPipeline.Status.DUPLICATE;
+        }
+        AuthPipeline.Status status = authPipeline.submit(playerUuid, serverExecutor, () -> hashPassword(password),
+                credential -> onComplete.accept(completeRegistration(playerUuid, credential)));
+        if (status != AuthPipeline.Status.ACCEPTED) {
+            stateManager.revertVerification(playerUuid, AuthSession.State.PENDING_REGISTER);
+        }
+        return status;
+    }
+
+    private boolean completeRegistration(UUID playerUuid, Credential credential) {
+        if (credential == null) {
+            LOGGER.error("因哈希错误，无法注册玩家 {}。", playerUuid);
+            stateManager.revertVerification(playerUuid, AuthSession.State.PENDING_REGISTER);
+            return false;
+        }
+        // 哈希期间状态可能已变化（断开连接、其他途径设置了密码）
+        if (hasPassword(playerUuid) || !isPlayerAuthenticating(playerUuid)) {
+            stateManager.revertVerification(playerUuid, AuthSession.State.PENDING_LOGIN);
+            return false;
+        }
+        credentialStore.put(playerUuid, credential);
+        offerCompanionKey(playerUuid);
+        boolean restored = stateManager.restorePlayerState(playerUuid);
+        if (!restored) {
+            LOGGER.warn("为玩家 {} 注册后无法完全恢复状态，但将继续执行。", playerUuid);
+        }
+        return true;
+    }
+
+    public AuthPipeline.Status authenticatePlayer(UUID playerUuid, String password, Executor serverExecutor, Consumer<Boolean> onComplete) {
+        Credential storedCredential = credentialStore.get(playerUuid);
+        if (storedCredential == null || !isPlayerAuthenticating(playerUuid)) {
+            onComplete.accept(false);
+            return AuthPipeline.Status.ACCEPTED;
+        }
+        String address = addressOf(playerUuid);
+        if (!admitAttempt(playerUuid, address)) {
+            return AuthPipeline.Status.THROTTLED;
+        }
+        if (!stateManager.beginVerification(playerUuid)) {
+            return AuthPipeline.Status.DUPLICATE;
+        }
+        AuthPipeline.Status status = authPipeline.submit(playerUuid, serverExecutor, () -> {
+            if (!verifyPassword(storedCredential, password)) {
+                loginThrottle.recordFailure(playerUuid, address);
+                return new LoginVerification(false, null);
+            }
+            loginThrottle.recordSuccess(playerUuid);
+            // 旧版或低成本凭据在校验通过后顺带升级
+            Credential upgraded = hashingEngine.needsRehash(storedCredential) ? hashPassword(password) : null;
+            return new LoginVerification(true, upgraded);
+        }, verification -> onComplete.accept(completeLogin(playerUuid, storedCredential, verification)));
+        if (status != AuthPipeline.Status.ACCEPTED) {
+            stateManager.revertVerification(playerUuid, AuthSession.State.PENDING_LOGIN);
+        }
+        return status;
+    }
+
+    private boolean completeLogin(UUID playerUuid, Credential verifiedCredential, LoginVerification verification) {
+        // 校验期间密码若已被管理员重置，本次校验结果作废，玩家需要重新设置密码
+        Credential currentCredential = credentialStore.get(playerUuid);
+        if (!verifiedCredential.equals(currentCredential)) {
+            stateManager.revertVerification(playerUuid, currentCredential == null ? AuthSession.State.PENDING_REGISTER : AuthSession.State.PENDING_LOGIN);
+            PlayerHandle player = server.getPlayer(playerUuid);
+            if (player != null && currentCredential == null && isPlayerAuthenticating(playerUuid)) {
+                player.sendMessage(SafeserverConstants.RESET_PASSWORD_PROMPT);
+            }
+            return false;
+        }
+        if (verification == null || !verification.matched()) {
+            stateManager.revertVerification(playerUuid, AuthSession.State.PENDING_LOGIN);
+            return false;
+        }
+        if (!isPlayerAuthenticating(playerUuid)) {
+            return false;
+        }
+        if (verification.upgradedCredential() != null) {
+            credentialStore.put(playerUuid, verification.upgradedCredential());
+            LOGGER.info("已将玩家 {} 的密码哈希升级为 PBKDF2（{} 次迭代）。", playerUuid, hashingEngine.getIterations());
+        }
+        offerCompanionKey(playerUuid);
+        boolean restored = stateManager.restorePlayerState(playerUuid);
+        if (!restored) {
+            LOGGER.warn("为玩家 {} 登录后无法完全恢复状态，但将继续执行。", playerUuid);
+        }
+        return true;
+    }
+
+    // 密码管理方法
+
+    public AuthPipeline.Status changePlayerPassword(UUID playerUuid, String oldPassword, String newPassword, Executor serverExecutor, Consumer<Boolean> onComplete) {
+        if (isPlayerAuthenticating(playerUuid)) {
+            LOGGER.warn("玩家 {} 尚未完成认证，无法更改密码。", playerUuid);
+            onComplete.accept(false);
+            return AuthPipeline.Status.ACCEPTED;
+        }
+        Credential storedCredential = credentialStore.get(playerUuid);
+        if (storedCredential == null) {
+            LOGGER.warn("玩家 {} 尚未设置密码，无法更改。", playerUuid);
+            onComplete.accept(false);
+            return AuthPipeline.Status.ACCEPTED;
+        }
+        String address = addressOf(playerUuid);
+        if (!admitAttempt(playerUuid, address)) {
+            return AuthPipeline.Status.THROTTLED;
+        }
+
+        return authPipeline.submit(playerUuid, serverExecutor, () -> {
+            if (!verifyPassword(storedCredential, oldPassword)) {
+                loginThrottle.recordFailure(playerUuid, address);
+                return null;
+            }
+            loginThrottle.recordSuccess(playerUuid);
+            Credential newCredential = hashPassword(newPassword);
+            if (newCredential == null) {
+                LOGGER.error("因哈希错误，无法更改玩家 {} 的密码。", playerUuid);
+            }
+            return newCredential;
+        }, newCredential -> onComplete.accept(completePasswordChange(playerUuid, storedCredential, newCredential)));
+    }
+
+    private boolean completePasswordChange(UUID playerUuid, Credential expectedCredential, Credential newCredential) {
+        // 校验期间密码若已被重置或修改，则放弃本次修改
+        if (newCredential == null || !expectedCredential.equals(credentialStore.get(playerUuid))) {
+            return false;
+        }
+        credentialStore.put(playerUuid, newCredential);
+        sessionTickets.invalidate(playerUuid);
+        offerCompanionKey(playerUuid);
+        LOGGER.info("玩家 {} 成功更改密码。", playerUuid);
+        return true;
+    }
+
+    public AuthPipeline.Status resetAndSetPassword(UUID playerUuid, String newPassword, Executor serverExecutor, Consumer<Boolean> onComplete) {
+        if (isPlayerAuthenticating(playerUuid)) {
+            LOGGER.warn("玩家 {} 尚未完成认证，无法重置密码。", playerUuid);
+            onComplete.accept(false);
+            return AuthPipeline.Status.ACCEPTED;
+        }
+        if (!hasPassword(playerUuid)) {
+            LOGGER.warn("玩家 {} 尚未设置密码，无法重置。", playerUuid);
+            onComplete.accept(false);
+            return AuthPipeline.Status.ACCEPTED;
+        }
+        if (!admitAttempt(playerUuid, addressOf(playerUuid))) {
+            return AuthPipeline.Status.THROTTLED;
+        }
+
+        return authPipeline.submit(playerUuid, serverExecutor, () -> hashPassword(newPassword),
+                newCredential -> onComplete.accept(completePasswordReset(playerUuid, newCredential)));
+    }
+
+    private boolean completePasswordReset(UUID playerUuid, Credential newCredential) {
+        if (newCredential == null) {
+            LOGGER.error("因哈希错误，无法为玩家 {} 重置密码。", playerUuid);
+            return false;
+        }
+        if (isPlayerAuthenticating(playerUuid) || !hasPassword(playerUuid)) {
+            return false;
+        }
+        credentialStore.put(playerUuid, newCredential);
+        sessionTickets.invalidate(playerUuid);
+        offerCompanionKey(playerUuid);
+        LOGGER.info("玩家 {} 使用 /setpassword 命令成功重置密码。", playerUuid);
+        return true;
+    }
+
+    // 提交哈希任务前检查限流，被拒绝的请求不会占用工作线程
+    private boolean admitAttempt(UUID playerUuid, String address) {
+        LoginThrottle.Verdict verdict = loginThrottle.tryAcquire(playerUuid, address);
+        if (verdict != LoginThrottle.Verdict.ALLOWED) {
+            LOGGER.debug("玩家 {} ({}) 的认证请求被限流拒绝：{}", playerUuid, address, verdict);
+            return false;
+        }
+        return true;
+    }
+
+    // 凭据变化后把新的伴随密钥发给在线玩家的客户端（旧密钥已随凭据失效）
+    private void offerCompanionKey(UUID playerUuid) {
+        if (companion == null) {
+            return;
+        }
+        PlayerHandle player = server.getPlayer(playerUuid);
+        Credential credential = credentialStore.get(playerUuid);
+        if (player != null && credential != null) {
+            player.sendCompanionKey(companion.deriveKey(playerUuid, credential));
+        }
+    }
+
+    private String addressOf(UUID playerUuid) {
+        PlayerHandle player = server.getPlayer(playerUuid);
+        return player != null ? player.getAddress() : null;
+    }
+
+    public boolean resetPlayerPassword(UUID targetPlayerUuid) {
+        if (!credentialStore.remove(targetPlayerUuid)) {
+            return false;
+        }
+        sessionTickets.invalidate(targetPlayerUuid);
+
+        PlayerHandle targetPlayer = server.getPlayer(targetPlayerUuid);
+        if (targetPlayer == null) {
+            LOGGER.info("玩家 {} 的密码已重置（离线状态），下次登录需重新设置。", targetPlayerUuid);
+        } else {
+            // 仍在认证中的玩家同样回到等待 /setpassword；正在校验的 /login 结果返回时会发现凭据已不存在
+            stateManager.forcePlayerIntoAuthenticationState(targetPlayer);
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,48 @@
+package youraveragedev.safeserver;
+
+import youraveragedev.safeserver.platform.PlayerSnapshot;
+import youraveragedev.safeserver.platform.SpawnPoint;
+
+import java.util.UUID;
+
+/**
+ * 单个玩家的认证会话（不可变）。
+ * 进入认证时记录的原始状态（游戏模式、位置）与当前认证状态放在同一个对象中，
+ * 状态变化时整体替换，因此不会出现各项数据彼此不一致的中间状态。
+ * freezePosition 在入场队列实际设置认证状态（旁观模式、传送、失明）后才有值，之前为 null。
+ */
+public record AuthSession(
+        UUID playerUuid,
+        State state,
+        PlayerSnapshot originalState,
+        SpawnPoint freezePosition,
+        long startedAtNanos) {
+
+    public enum State {
+        // 等待 /setpassword
+        PENDING_REGISTER,
+        // 等待 /login
+        PENDING_LOGIN,
+        // 密码正在工作线程上校验
+        VERIFYING,
+        // 认证成功，正在恢复玩家状态
+        RESTORING
+    }
+
+    public AuthSession withState(State newState) {
+        return new AuthSession(playerUuid, newState, originalState, freezePosition, startedAtNanos);
+    }
+
+    public AuthSession withFreezePosition(SpawnPoint newFreezePosition) {
+        return new AuthSession(playerUuid, state, originalState, newFreezePosition, startedAtNanos);
+    }
+
+    // 认证状态是否已实际应用到玩家身上
+    public boolean isApplied() {
+        return freezePosition != null;
+    }
+
+    public boolean isAwaitingInput() {
+        return state == State.PENDING_REGISTER || state == State.PENDING_LOGIN;
+    }
+}
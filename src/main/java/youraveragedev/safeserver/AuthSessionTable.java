@@ -0,0 +1,79 @@
+package youraveragedev.safeserver;
+
+import youraveragedev.safeserver.gate.AuthGate;
+import youraveragedev.safeserver.platform.PlayerHandle;
+
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 认证会话表。
+ * 每个认证中玩家一个不可变会话，状态变化时整体替换；会话的创建与移除同时维护玩家实体上的认证标记。
+ * 不依赖服务器实例，PlayerStateManager 在此之上处理传送、游戏模式等玩家状态。
+ */
+final class AuthSessionTable {
+    private final ConcurrentHashMap<UUID, AuthSession> sessions = new ConcurrentHashMap<>();
+
+    boolean contains(UUID playerUuid) {
+        return sessions.containsKey(playerUuid);
+    }
+
+    AuthSession get(UUID playerUuid) {
+        return sessions.get(playerUuid);
+    }
+
+    int size() {
+        return sessions.size();
+    }
+
+    // 登记会话并为玩家实体打上认证标记；已有会话时返回 false
+    boolean open(AuthSession session, PlayerHandle player) {
+        if (sessions.putIfAbsent(session.playerUuid(), session) != null) {
+            return false;
+        }
+        AuthGate.enter();
+        player.setAuthGated(true);
+        return true;
+    }
+
+    // 移除会话并清除认证标记（玩家已不在线时 player 为 null）；会话已被替换或移除时返回 false
+    boolean close(AuthSession session, PlayerHandle player) {
+        if (!sessions.remove(session.playerUuid(), session)) {
+            return false;
+        }
+        if (player != null) {
+            player.setAuthGated(false);
+        }
+        AuthGate.leave();
+        return true;
+    }
+
+    boolean replace(AuthSession current, AuthSession next) {
+        return sessions.replace(current.playerUuid(), current, next);
+    }
+
+    // 等待输入的会话原子地进入校验状态；已在校验或不在认证中时返回 false
+    boolean beginVerification(UUID playerUuid) {
+        AuthSession current = sessions.get(playerUuid);
+        return current != null && current.isAwaitingInput()
+            && sessions.replace(playerUuid, current, current.withState(AuthSession.State.VERIFYING));
+    }
+
+    // 校验失败或未能提交时回到等待输入状态
+    void revertVerification(UUID playerUuid, AuthSession.State pendingState) {
+        sessions.computeIfPresent(playerUuid, (uuid, session) ->
+            session.state() == AuthSession.State.VERIFYING ? session.withState(pendingState) : session);
+    }
+
+    // 管理员重置密码：仍在认证中的会话（包括等待恢复状态的会话）改为等待 /setpassword，
+    // 校验中的会话保持不变，由校验结果回调发现凭据已被移除；不在认证中时返回 false
+    boolean resetToRegistration(UUID playerUuid) {
+        return sessions.computeIfPresent(playerUuid, (uuid, session) ->
+            session.state() == AuthSession.State.VERIFYING ? session : session.withState(AuthSession.State.PENDING_REGISTER)) != null;
+    }
+
+    // 认证成功后进入恢复状态，返回新会话；不在认证中时返回 null
+    AuthSession markRestoring(UUID playerUuid) {
+        return sessions.computeIfPresent(playerUuid, (uuid, current) -> current.withState(AuthSession.State.RESTORING));
+    }
+}
@@ -0,0 +1,93 @@
+package youraveragedev.safeserver;
+
+import com.mojang.authlib.GameProfile;
+import net.fabricmc.fabric.api.networking.v1.LoginPacketSender;
+import net.fabricmc.fabric.api.networking.v1.PacketByteBufs;
+import net.fabricmc.fabric.api.networking.v1.ServerLoginConnectionEvents;
+import net.fabricmc.fabric.api.networking.v1.ServerLoginNetworking;
+import net.minecraft.network.ClientConnection;
+import net.minecraft.network.PacketByteBuf;
+import net.minecraft.server.network.ServerLoginNetworkHandler;
+import youraveragedev.safeserver.auth.CompanionAuthenticator;
+import youraveragedev.safeserver.mixin.ServerLoginNetworkHandlerAccessor;
+import youraveragedev.safeserver.network.CompanionProtocol;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 登录阶段（玩家实体创建前）的伴随模组握手：向已设置密码的玩家发送挑战，应答有效时由 AuthService 登记加入许可，
+ * 玩家加入后不再进入等待区。客户端未安装伴随模组、没有密钥或应答无效时照常进入游戏内认证。
+ */
+final class CompanionLoginHandler {
+    
+    // 已发出、尚未收到应答的挑战
+    private record Challenge(UUID playerUuid, byte[] nonce) {
+    }
+    
+    private final AuthService authService;
+    
+    private final Map<ServerLoginNetworkHandler, Challenge> pendingChallenges = new ConcurrentHashMap<>();
+    
+    CompanionLoginHandler(AuthService authService) {
+        this.authService = authService;
+    }
+    
+    void register() {
+        ServerLoginConnectionEvents.QUERY_START.register((handler, server, sender, synchronizer) -> sendChallenge(handler, sender));
+        ServerLoginNetworking.registerGlobalReceiver(CompanionProtocol.LOGIN_CHANNEL,
+                (server, handler, understood, buf, synchronizer, responseSender) -> receiveResponse(handler, understood, buf));
+        ServerLoginConnectionEvents.DISCONNECT.register((handler, server) -> onDisconnect(handler));
+    }
+    
+    private void sendChallenge(ServerLoginNetworkHandler handler, LoginPacketSender sender) {
+        GameProfile profile = ((ServerLoginNetworkHandlerAccessor) handler).safeserver$getProfile();
+        if (profile == null || profile.getId() == null) {
+            return;
+        }
+        UUID playerUuid = profile.getId();
+        byte[] nonce = authService.newCompanionChallenge(playerUuid);
+        if (nonce == null) {
+            // 尚未设置密码的玩家需要在游戏内注册
+            return;
+        }
+        pendingChallenges.put(handler, new Challenge(playerUuid, nonce));
+        
+        PacketByteBuf buf = PacketByteBufs.create();
+        buf.writeUuid(playerUuid);
+        buf.writeByteArray(nonce);
+        sender.sendPacket(CompanionProtocol.LOGIN_CHANNEL, buf);
+    }
+    
+    private void receiveResponse(ServerLoginNetworkHandler handler, boolean understood, PacketByteBuf buf) {
+        Challenge challenge = pendingChallenges.remove(handler);
+        if (challenge == null) {
+            return;
+        }
+        if (!understood) {
+            authService.recordCompanionUnsupported(challenge.playerUuid());
+            return;
+        }
+        byte[] response = buf.readByteArray(CompanionAuthenticator.RESPONSE_LENGTH);
+        ClientConnection connection = ((ServerLoginNetworkHandlerAccessor) handler).safeserver$getConnection();
+        authService.verifyCompanionResponse(challenge.playerUuid(), addressOf(connection), connection, challenge.nonce(), response);
+    }
+
+    // 登录阶段断开：丢弃未应答的挑战，并作废该连接已取得的许可
+    private void onDisconnect(ServerLoginNetworkHandler handler) {
+        pendingChallenges.remove(handler);
+        GameProfile profile = ((ServerLoginNetworkHandlerAccessor) handler).safeserver$getProfile();
+        if (profile != null && profile.getId() != null) {
+            authService.discardCompanionApproval(profile.getId(), ((ServerLoginNetworkHandlerAccessor) handler).safeserver$getConnection());
+        }
+    }
+    
+    // 与 ServerPlayerEntity.getIp 相同的地址格式，使登录阶段与游戏内认证共用按 IP 的限流
+    private static String addressOf(ClientConnection connection) {
+        String address = connection.getAddress().toString();
+        address = address.substring(address.indexOf('/') + 1);
+        int portSeparator = address.indexOf(':');
+        return portSeparator >= 0 ? address.substring(0, portSeparator) : address;
+    }
+}
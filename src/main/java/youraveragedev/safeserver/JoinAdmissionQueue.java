@@ -0,0 +1,82 @@
+package youraveragedev.safeserver;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.UUID;
+
+/**
+ * 入场调度队列。
+ * 服务器重启后大量玩家同时加入时，认证状态的设置（出生点计算、切换模式、传送、效果）
+ * 和认证成功后的状态恢复都放入此队列，在每个 tick 结束时按时间预算分批执行，避免单个 tick 过长。
+ * 仅在服务器线程上访问。
+ */
+public class JoinAdmissionQueue {
+    private static final Logger LOGGER = LoggerFactory.getLogger("safeserver-admission");
+
+    // 数值越小越先处理；同一优先级按入队顺序
+    public enum Priority {
+        // 已通过认证、等待恢复状态的玩家
+        RESTORE,
+        // OP
+        OPERATOR,
+        // 已注册的老玩家
+        RETURNING,
+        // 新玩家
+        NEW
+    }
+
+    private record Task(UUID playerUuid, Priority priority, long sequence, Runnable work) {}
+
+    private final PriorityQueue<Task> tasks = new PriorityQueue<>(
+            Comparator.comparingInt((Task task) -> task.priority().ordinal()).thenComparingLong(Task::sequence));
+    private final long budgetNanos;
+    private long nextSequence;
+
+    private long processedTasks;
+    private int peakDepth;
+
+    public JoinAdmissionQueue(long budgetMillis) {
+        this.budgetNanos = Math.max(0, budgetMillis) * 1_000_000L;
+    }
+
+    public void enqueue(UUID playerUuid, Priority priority, Runnable work) {
+        tasks.add(new Task(playerUuid, priority, nextSequence++, work));
+        peakDepth = Math.max(peakDepth, tasks.size());
+    }
+
+    // 在 tick 结束时调用；至少执行一个任务以保证进度
+    public void drain() {
+        if (tasks.isEmpty()) {
+            return;
+        }
+        long deadline = System.nanoTime() + budgetNanos;
+        do {
+            Task task = tasks.poll();
+            try {
+                task.work().run();
+            } catch (Exception e) {
+                LOGGER.error("处理玩家 {} 的入场任务（{}）时发生错误：{}", task.playerUuid(), task.priority(), e.getMessage(), e);
+            }
+            processedTasks++;
+        } while (!tasks.isEmpty() && System.nanoTime() - deadline < 0);
+    }
+
+    public void clear() {
+        tasks.clear();
+    }
+
+    public int size() {
+        return tasks.size();
+    }
+
+    public long getProcessedTasks() {
+        return processedTasks;
+    }
+
+    public int getPeakDepth() {
+        return peakDepth;
+    }
+}
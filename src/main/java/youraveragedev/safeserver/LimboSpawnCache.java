@@ -0,0 +1,127 @@
+package youraveragedev.safeserver;
+
+import net.minecraft.registry.Registries;
+import net.minecraft.registry.Registry;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.world.ChunkTicketType;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.Vec3d;
+import net.minecraft.world.Heightmap;
+import net.minecraft.world.World;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 认证等待区（出生点上方）坐标缓存。
+ * 坐标只在首次使用或世界出生点变化后计算一次，所在区块由专用的区块票据保持加载，
+ * 因此玩家加入时不会因读取高度图而同步加载区块。出生点变化后每 tick 检查一次新位置的区块，
+ * 加载完成前继续使用旧坐标与旧票据，加载完成后再切换。仅在服务器线程上访问。
+ */
+public class LimboSpawnCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger("safeserver-limbo-spawn");
+
+    // 出生点每变化一次加一，由 ServerWorldMixin 调用 onSpawnChanged 更新
+    private static final AtomicInteger spawnGeneration = new AtomicInteger();
+
+    private static ChunkTicketType ticketType;
+
+    // 等待区所在区块上的票据
+    private record Ticket(ServerWorld world, ChunkPos pos) {
+        void add() {
+            world.getChunkManager().addTicket(ticketType, pos, SafeserverConstants.LIMBO_TICKET_RADIUS);
+        }
+
+        void remove() {
+            world.getChunkManager().removeTicket(ticketType, pos, SafeserverConstants.LIMBO_TICKET_RADIUS);
+        }
+
+        boolean isLoaded() {
+            return world.isChunkLoaded(pos.x, pos.z);
+        }
+    }
+
+    private Vec3d cachedPosition;
+    private int cachedGeneration;
+    // 当前坐标所在区块的票据
+    private Ticket currentTicket;
+    // 出生点变化后新位置的票据，区块加载完成后成为 currentTicket
+    private Ticket pendingTicket;
+
+    // 在模组初始化时注册区块票据类型（注册表冻结前）
+    public static void registerTicketType() {
+        ticketType = Registry.register(Registries.TICKET_TYPE, Identifier.of(Safeserver.MOD_ID, "limbo_spawn"),
+                new ChunkTicketType(0L, ChunkTicketType.FOR_LOADING));
+    }
+
+    public static void onSpawnChanged() {
+        spawnGeneration.incrementAndGet();
+    }
+
+    // 返回等待区坐标；无法获取主世界时返回 null。出生点变化后新区块加载完成前返回旧坐标
+    public Vec3d get(MinecraftServer server) {
+        refresh(server);
+        return cachedPosition;
+    }
+
+    // 每个 tick 结束时调用：出生点变化后为新位置加上票据，区块加载完成后才读取高度图并切换坐标。
+    // 只有尚无坐标（服务器启动时的首次计算）才会同步加载区块
+    public void refresh(MinecraftServer server) {
+        int generation = spawnGeneration.get();
+        if (cachedPosition != null && cachedGeneration == generation) {
+            return;
+        }
+
+        ServerWorld overworld = server.getWorld(World.OVERWORLD);
+        if (overworld == null) {
+            return;
+        }
+        BlockPos spawnPos = overworld.getSpawnPos();
+        Ticket wanted = new Ticket(overworld, new ChunkPos(spawnPos));
+        if (wanted.equals(currentTicket)) {
+            releasePendingTicket();
+        } else if (!wanted.equals(pendingTicket)) {
+            // 区块加载期间出生点再次变化时，放弃上一个尚未用上的票据
+            releasePendingTicket();
+            wanted.add();
+            pendingTicket = wanted;
+        }
+        if (cachedPosition != null && !wanted.isLoaded()) {
+            return;
+        }
+
+        int safeY = overworld.getTopY(Heightmap.Type.MOTION_BLOCKING_NO_LEAVES, spawnPos.getX(), spawnPos.getZ());
+        cachedPosition = new Vec3d(
+            spawnPos.getX() + SafeserverConstants.SAFE_SPAWN_CENTER_OFFSET,
+            safeY + SafeserverConstants.SAFE_SPAWN_Y_OFFSET,
+            spawnPos.getZ() + SafeserverConstants.SAFE_SPAWN_CENTER_OFFSET
+        );
+        cachedGeneration = generation;
+        if (pendingTicket != null) {
+            if (currentTicket != null) {
+                currentTicket.remove();
+            }
+            currentTicket = pendingTicket;
+            pendingTicket = null;
+        }
+        LOGGER.info("认证等待区坐标已更新为 {}。", cachedPosition);
+    }
+
+    // 服务器停止后调用；票据不会持久化，随世界一起释放，这里只清空引用
+    public void clear() {
+        cachedPosition = null;
+        currentTicket = null;
+        pendingTicket = null;
+    }
+
+    private void releasePendingTicket() {
+        if (pendingTicket != null) {
+            pendingTicket.remove();
+            pendingTicket = null;
+        }
+    }
+}
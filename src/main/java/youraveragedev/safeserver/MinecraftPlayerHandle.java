@@ -0,0 +1,191 @@
+package youraveragedev.safeserver;
+
+import net.fabricmc.fabric.api.networking.v1.ServerPlayNetworking;
+import net.minecraft.entity.effect.StatusEffectInstance;
+import net.minecraft.entity.effect.StatusEffects;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.text.Text;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Vec3d;
+import net.minecraft.world.GameMode;
+import net.minecraft.world.Heightmap;
+import net.minecraft.world.World;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import youraveragedev.safeserver.gate.AuthGatedPlayer;
+import youraveragedev.safeserver.mixin.ServerCommonNetworkHandlerAccessor;
+import youraveragedev.safeserver.network.CompanionProtocol;
+import youraveragedev.safeserver.platform.PlayerHandle;
+import youraveragedev.safeserver.platform.PlayerSnapshot;
+import youraveragedev.safeserver.platform.SpawnPoint;
+
+import java.util.UUID;
+
+/**
+ * 游戏内玩家：把认证核心的操作转换为对 ServerPlayerEntity 的调用。仅在服务器线程上使用。
+ */
+final class MinecraftPlayerHandle implements PlayerHandle {
+    private static final Logger LOGGER = LoggerFactory.getLogger("safeserver-state-manager");
+
+    // 进入认证前的游戏模式与位置
+    private record Snapshot(GameMode gameMode, Vec3d position) implements PlayerSnapshot {
+    }
+
+    private final ServerPlayerEntity player;
+    private final MinecraftServer server;
+
+    MinecraftPlayerHandle(ServerPlayerEntity player, MinecraftServer server) {
+        this.player = player;
+        this.server = server;
+    }
+
+    @Override
+    public UUID getUuid() {
+        return player.getUuid();
+    }
+
+    @Override
+    public String getName() {
+        return player.getName().getString();
+    }
+
+    @Override
+    public String getAddress() {
+        return player.getIp();
+    }
+
+    @Override
+    public Object getConnection() {
+        return ((ServerCommonNetworkHandlerAccessor) player.networkHandler).safeserver$getConnection();
+    }
+
+    @Override
+    public boolean isOperator() {
+        return server != null && server.getPlayerManager().isOperator(player.getGameProfile());
+    }
+
+    @Override
+    public void sendMessage(String message) {
+        player.sendMessage(Text.literal(message), false);
+    }
+
+    @Override
+    public boolean isAuthGated() {
+        return ((AuthGatedPlayer) player).safeserver$isAuthGated();
+    }
+
+    @Override
+    public void setAuthGated(boolean gated) {
+        ((AuthGatedPlayer) player).safeserver$setAuthGated(gated);
+    }
+
+    @Override
+    public PlayerSnapshot captureState() {
+        return new Snapshot(player.interactionManager.getGameMode(), player.getPos());
+    }
+
+    @Override
+    public void enterLimbo(SpawnPoint limbo) {
+        player.changeGameMode(GameMode.SPECTATOR);
+        player.networkHandler.requestTeleport(limbo.x(), limbo.y(), limbo.z(), 0, 0);
+        player.addStatusEffect(new StatusEffectInstance(StatusEffects.BLINDNESS, Integer.MAX_VALUE, 0, false, false, true));
+    }
+
+    @Override
+    public boolean restoreState(PlayerSnapshot original) {
+        String playerName = getName();
+        Snapshot snapshot = original instanceof Snapshot s ? s : new Snapshot(null, null);
+        boolean success = true;
+
+        Vec3d originalPos = snapshot.position();
+        if (originalPos != null) {
+            player.networkHandler.requestTeleport(originalPos.getX(), originalPos.getY(), originalPos.getZ(), player.getYaw(), player.getPitch());
+            LOGGER.info("已请求将玩家 {} 传送回位置 {}。", playerName, originalPos);
+        } else {
+            success = restoreToSpawn(playerName);
+        }
+
+        GameMode modeToRestore = determineGameModeToRestore(snapshot.gameMode(), playerName);
+        if (modeToRestore != null) {
+            if (player.interactionManager.getGameMode() != modeToRestore) {
+                player.changeGameMode(modeToRestore);
+            }
+        } else {
+            success = false;
+        }
+
+        if (player.hasStatusEffect(StatusEffects.BLINDNESS)) {
+            player.removeStatusEffect(StatusEffects.BLINDNESS);
+            LOGGER.info("已移除玩家 {} 的失明效果。", playerName);
+        }
+        return success;
+    }
+
+    @Override
+    public void refreshCommandTree() {
+        if (server != null) {
+            server.getPlayerManager().sendCommandTree(player);
+        }
+    }
+
+    @Override
+    public void sendCompanionKey(byte[] key) {
+        if (ServerPlayNetworking.canSend(player, CompanionProtocol.KeyPayload.ID)) {
+            ServerPlayNetworking.send(player, new CompanionProtocol.KeyPayload(key));
+        }
+    }
+
+    private boolean restoreToSpawn(String playerName) {
+        LOGGER.warn("无法找到玩家 {} 的原始位置，正在将其传送至出生点。", playerName);
+
+        if (server != null) {
+            ServerWorld overworld = server.getWorld(World.OVERWORLD);
+            if (overworld != null) {
+                BlockPos spawnPos = overworld.getSpawnPos();
+                int spawnY = overworld.getTopY(Heightmap.Type.MOTION_BLOCKING_NO_LEAVES, spawnPos.getX(), spawnPos.getZ());
+                player.networkHandler.requestTeleport(
+                    spawnPos.getX() + SafeserverConstants.SAFE_SPAWN_CENTER_OFFSET,
+                    spawnY,
+                    spawnPos.getZ() + SafeserverConstants.SAFE_SPAWN_CENTER_OFFSET,
+                    overworld.getSpawnAngle(),
+                    0.0f
+                );
+                return true;
+            } else {
+                LOGGER.error("无法获取主世界，无法将玩家 {} 传送至出生点！", playerName);
+                return false;
+            }
+        } else {
+            LOGGER.error("无法获取服务器实例，无法将玩家 {} 传送至出生点！", playerName);
+            return false;
+        }
+    }
+
+    private GameMode determineGameModeToRestore(GameMode originalMode, String playerName) {
+        if (originalMode != null) {
+            if (originalMode == GameMode.SPECTATOR) {
+                if (server != null) {
+                    GameMode defaultMode = server.getDefaultGameMode();
+                    LOGGER.info("原始游戏模式为旁观模式，为玩家 {} 恢复为服务器默认模式（{}）。", playerName, defaultMode);
+                    return defaultMode;
+                } else {
+                    LOGGER.error("无法获取服务器实例，无法确定玩家 {} 的默认游戏模式，恢复可能失败。", playerName);
+                    return null;
+                }
+            } else {
+                LOGGER.info("已为玩家 {} 恢复原始游戏模式（{}）。", playerName, originalMode);
+                return originalMode;
+            }
+        } else {
+            LOGGER.warn("无法找到玩家 {} 的原始游戏模式，将使用服务器默认模式。", playerName);
+            if (server != null) {
+                return server.getDefaultGameMode();
+            } else {
+                LOGGER.error("无法获取服务器实例，无法确定玩家 {} 的默认游戏模式，恢复可能失败。", playerName);
+                return null;
+            }
+        }
+    }
+}
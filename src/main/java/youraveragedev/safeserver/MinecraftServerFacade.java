@@ -0,0 +1,54 @@
+package youraveragedev.safeserver;
+
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.util.math.Vec3d;
+import youraveragedev.safeserver.platform.PlayerHandle;
+import youraveragedev.safeserver.platform.ServerFacade;
+import youraveragedev.safeserver.platform.SpawnLocator;
+import youraveragedev.safeserver.platform.SpawnPoint;
+
+import java.util.UUID;
+
+/**
+ * 游戏内服务器：服务器实例在 SERVER_STARTING 时绑定，之前查询玩家一律返回 null。
+ * 等待区坐标由 {@link LimboSpawnCache} 计算并缓存。
+ */
+final class MinecraftServerFacade implements ServerFacade, SpawnLocator {
+    private final LimboSpawnCache limboSpawn;
+    private volatile MinecraftServer server;
+
+    MinecraftServerFacade(LimboSpawnCache limboSpawn) {
+        this.limboSpawn = limboSpawn;
+    }
+
+    void bind(MinecraftServer server) {
+        this.server = server;
+    }
+
+    MinecraftServer getServer() {
+        return server;
+    }
+
+    // 包装指定的玩家实体
+    PlayerHandle wrap(ServerPlayerEntity player) {
+        return new MinecraftPlayerHandle(player, server);
+    }
+
+    @Override
+    public PlayerHandle getPlayer(UUID playerUuid) {
+        MinecraftServer current = server;
+        if (current == null) {
+            return null;
+        }
+        ServerPlayerEntity player = current.getPlayerManager().getPlayer(playerUuid);
+        return player != null ? new MinecraftPlayerHandle(player, current) : null;
+    }
+
+    @Override
+    public SpawnPoint getLimboSpawn() {
+        MinecraftServer current = server;
+        Vec3d pos = current != null ? limboSpawn.get(current) : null;
+        return pos != null ? new SpawnPoint(pos.getX(), pos.getY(), pos.getZ()) : null;
+    }
+}
@@ -0,0 +1,76 @@
+package youraveragedev.safeserver;
+
+import net.minecraft.network.packet.Packet;
+import net.minecraft.network.packet.c2s.common.ClientOptionsC2SPacket;
+import net.minecraft.network.packet.c2s.common.CommonPongC2SPacket;
+import net.minecraft.network.packet.c2s.common.KeepAliveC2SPacket;
+import net.minecraft.network.packet.c2s.common.ResourcePackStatusC2SPacket;
+import net.minecraft.network.packet.c2s.play.AcknowledgeChunksC2SPacket;
+import net.minecraft.network.packet.c2s.play.AcknowledgeReconfigurationC2SPacket;
+import net.minecraft.network.packet.c2s.play.ChatCommandSignedC2SPacket;
+import net.minecraft.network.packet.c2s.play.ClientTickEndC2SPacket;
+import net.minecraft.network.packet.c2s.play.CommandExecutionC2SPacket;
+import net.minecraft.network.packet.c2s.play.MessageAcknowledgmentC2SPacket;
+import net.minecraft.network.packet.c2s.play.PlayerLoadedC2SPacket;
+import net.minecraft.network.packet.c2s.play.PlayerMoveC2SPacket;
+import net.minecraft.network.packet.c2s.play.PlayerSessionC2SPacket;
+import net.minecraft.network.packet.c2s.play.TeleportConfirmC2SPacket;
+import youraveragedev.safeserver.gate.AuthGate;
+import youraveragedev.safeserver.metrics.SafeserverMetrics;
+
+import java.util.List;
+
+/**
+ * 认证中玩家的入站数据包白名单，在网络线程上、数据包交给 ServerPlayNetworkHandler 之前检查。
+ * 只放行连接维持、命令、客户端设置、区块与传送确认以及移动数据包（由位置冻结处理），
+ * 聊天、物品栏、交互、编辑书与告示牌、插件消息等一律丢弃，并按数据包类型计数。
+ */
+public final class PacketFirewall {
+
+    private static final List<Class<?>> ALLOWED_PACKETS = List.of(
+        // 连接维持与客户端设置
+        KeepAliveC2SPacket.class,
+        CommonPongC2SPacket.class,
+        ClientOptionsC2SPacket.class,
+        ResourcePackStatusC2SPacket.class,
+        ClientTickEndC2SPacket.class,
+        PlayerLoadedC2SPacket.class,
+        AcknowledgeChunksC2SPacket.class,
+        AcknowledgeReconfigurationC2SPacket.class,
+        // /login 与 /setpassword（其余命令已在命令树中拒绝）
+        CommandExecutionC2SPacket.class,
+        ChatCommandSignedC2SPacket.class,
+        // 聊天签名会话与确认，丢弃会使认证后的聊天校验失败
+        PlayerSessionC2SPacket.class,
+        MessageAcknowledgmentC2SPacket.class,
+        // 传送确认与移动，位置冻结依赖它们纠正客户端位置
+        TeleportConfirmC2SPacket.class,
+        PlayerMoveC2SPacket.class
+    );
+
+    // 每个数据包类只判断一次（包括 PlayerMoveC2SPacket 的各个子类）
+    private static final ClassValue<Boolean> ALLOWED = new ClassValue<>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            for (Class<?> allowed : ALLOWED_PACKETS) {
+                if (allowed.isAssignableFrom(type)) {
+                    return Boolean.TRUE;
+                }
+            }
+            return Boolean.FALSE;
+        }
+    };
+
+    private PacketFirewall() {
+        throw new UnsupportedOperationException("此类为工具类，不可实例化。");
+    }
+
+    // 返回是否放行；认证中玩家的非白名单数据包记录后丢弃
+    public static boolean accepts(Object player, Packet<?> packet) {
+        if (!AuthGate.isGated(player) || ALLOWED.get(packet.getClass())) {
+            return true;
+        }
+        SafeserverMetrics.recordDroppedPacket(packet.getPacketType().id().toString());
+        return false;
+    }
+}
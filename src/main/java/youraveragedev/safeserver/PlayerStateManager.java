@@ -1,300 +1,244 @@
 package youraveragedev.safeserver;
 
-import net.minecraft.entity.effect.StatusEffectInstance;
-import net.minecraft.entity.effect.StatusEffects;
-import net.minecraft.server.MinecraftServer;
-import net.minecraft.server.network.ServerPlayerEntity;
-import net.minecraft.server.world.ServerWorld;
-import net.minecraft.text.Text;
-import net.minecraft.util.math.BlockPos;
-import net.minecraft.util.math.Vec3d;
-import net.minecraft.world.GameMode;
-import net.minecraft.world.Heightmap;
-import net.minecraft.world.World;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import youraveragedev.safeserver.metrics.SafeserverMetrics;
+import youraveragedev.safeserver.platform.PlayerHandle;
+import youraveragedev.safeserver.platform.ServerFacade;
+import youraveragedev.safeserver.platform.SpawnLocator;
+import youraveragedev.safeserver.platform.SpawnPoint;
 
-import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
 
 public class PlayerStateManager {
     private static final Logger LOGGER = LoggerFactory.getLogger("safeserver-state-manager");
     
-    private final Set<UUID> authenticatingPlayers = ConcurrentHashMap.newKeySet();
-    private final ConcurrentHashMap<UUID, GameMode> originalGameModes = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<UUID, Vec3d> initialPositions = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<UUID, Vec3d> originalPositionsBeforeAuth = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<UUID, Boolean> originalOpStatus = new ConcurrentHashMap<>();
+    // 每个认证中玩家一个不可变会话，状态变化时整体替换
+    private final AuthSessionTable sessions = new AuthSessionTable();
     
-    private MinecraftServer serverInstance;
+    // 耗时的状态设置与恢复放入入场队列按 tick 预算执行
+    private final JoinAdmissionQueue admissionQueue;
     
-    public void setServerInstance(MinecraftServer server) {
-        this.serverInstance = server;
+    private final ServerFacade server;
+    
+    // 认证等待区坐标
+    private final SpawnLocator spawnLocator;
+    
+    public PlayerStateManager(JoinAdmissionQueue admissionQueue, ServerFacade server, SpawnLocator spawnLocator) {
+        this.admissionQueue = admissionQueue;
+        this.server = server;
+        this.spawnLocator = spawnLocator;
     }
     
     public boolean isPlayerAuthenticating(UUID playerUuid) {
-        return authenticatingPlayers.contains(playerUuid);
+        return sessions.contains(playerUuid);
     }
     
-    public void applyAuthenticationState(ServerPlayerEntity player, MinecraftServer server) {
+    public AuthSession getSession(UUID playerUuid) {
+        return sessions.get(playerUuid);
+    }
+    
+    public int getSessionCount() {
+        return sessions.size();
+    }
+    
+    // 玩家加入时立即建立会话并打上认证标记，旁观模式、传送和失明效果由入场队列稍后设置
+    public void applyAuthenticationState(PlayerHandle player, boolean hasPassword) {
         UUID playerUuid = player.getUuid();
-        String playerName = player.getName().getString();
-        
-        authenticatingPlayers.add(playerUuid);
-        originalGameModes.put(playerUuid, player.interactionManager.getGameMode());
-        
-        Vec3d originalPos = player.getPos();
-        originalPositionsBeforeAuth.put(playerUuid, originalPos);
-        
-        Vec3d safePos = calculateSafeSpawnPosition(server, playerName);
-        initialPositions.put(playerUuid, safePos);
         
-        boolean wasOp = server.getPlayerManager().isOperator(player.getGameProfile());
-        originalOpStatus.put(playerUuid, wasOp);
-        if (wasOp) {
-            server.getPlayerManager().removeFromOperators(player.getGameProfile());
-            LOGGER.info("玩家 {} ({}) 的 OP 权限已临时移除，进入认证流程。", playerName, playerUuid);
+        AuthSession session = new AuthSession(
+            playerUuid,
+            hasPassword ? AuthSession.State.PENDING_LOGIN : AuthSession.State.PENDING_REGISTER,
+            player.captureState(),
+            null,
+            System.nanoTime()
+        );
+        if (!openSession(player, session)) {
+            return;
         }
         
-        player.changeGameMode(GameMode.SPECTATOR);
-        player.networkHandler.requestTeleport(safePos.getX(), safePos.getY(), safePos.getZ(), 0, 0);
-        player.addStatusEffect(new StatusEffectInstance(StatusEffects.BLINDNESS, Integer.MAX_VALUE, 0, false, false, true));
-        
-        LOGGER.info("已为玩家 {} 设置旁观模式和失明效果，进入认证流程。", playerName);
+        // OP 权限由 MinecraftServerMixin 在认证期间临时屏蔽，不修改 ops.json
+        JoinAdmissionQueue.Priority priority = player.isOperator() ? JoinAdmissionQueue.Priority.OPERATOR
+            : hasPassword ? JoinAdmissionQueue.Priority.RETURNING : JoinAdmissionQueue.Priority.NEW;
+        admissionQueue.enqueue(playerUuid, priority, () -> applyLimbo(playerUuid));
     }
     
-    public void sendWelcomeMessages(ServerPlayerEntity player, boolean hasPassword) {
+    public void sendWelcomeMessages(PlayerHandle player, boolean hasPassword) {
         if (hasPassword) {
-            player.sendMessage(Text.literal(SafeserverConstants.WELCOME_BACK_MESSAGE), false);
+            player.sendMessage(SafeserverConstants.WELCOME_BACK_MESSAGE);
         } else {
-            player.sendMessage(Text.literal(SafeserverConstants.WELCOME_NEW_MESSAGE), false);
-            player.sendMessage(Text.literal(SafeserverConstants.SET_PASSWORD_PROMPT), false);
+            player.sendMessage(SafeserverConstants.WELCOME_NEW_MESSAGE);
+            player.sendMessage(SafeserverConstants.SET_PASSWORD_PROMPT);
         }
     }
     
+    // 等待输入的会话原子地进入校验状态；已在校验或不在认证中时返回 false
+    public boolean beginVerification(UUID playerUuid) {
+        return sessions.beginVerification(playerUuid);
+    }
+    
+    // 校验失败或未能提交时回到等待输入状态
+    public void revertVerification(UUID playerUuid, AuthSession.State pendingState) {
+        sessions.revertVerification(playerUuid, pendingState);
+    }
+    
     public boolean restorePlayerState(UUID playerUuid) {
-        GameMode originalMode = originalGameModes.remove(playerUuid);
-        initialPositions.remove(playerUuid);
-        Vec3d originalPos = originalPositionsBeforeAuth.remove(playerUuid);
-        Boolean wasOp = originalOpStatus.remove(playerUuid);
+        AuthSession session = sessions.markRestoring(playerUuid);
+        if (session == null) {
+            LOGGER.warn("玩家 {} 没有认证会话，无需恢复状态。", playerUuid);
+            return false;
+        }
         
-        ServerPlayerEntity player = (serverInstance != null) ? serverInstance.getPlayerManager().getPlayer(playerUuid) : null;
+        SafeserverMetrics.SESSION_DURATION.record(System.nanoTime() - session.startedAtNanos());
+        admissionQueue.enqueue(playerUuid, JoinAdmissionQueue.Priority.RESTORE, () -> finishRestore(playerUuid));
+        return true;
+    }
+    
+    // 入场队列任务：恢复玩家认证前的位置和游戏模式，然后移除会话
+    private void finishRestore(UUID playerUuid) {
+        AuthSession session = sessions.get(playerUuid);
+        if (session == null || session.state() != AuthSession.State.RESTORING) {
+            // 玩家已断开（断开处理已恢复其状态），或恢复前密码被管理员重置、会话已回到等待输入
+            return;
+        }
+        
+        PlayerHandle player = server.getPlayer(playerUuid);
         boolean success = true;
         
-        if (player != null) {
-            String playerName = player.getName().getString();
-            
-            if (originalPos != null) {
-                player.networkHandler.requestTeleport(originalPos.getX(), originalPos.getY(), originalPos.getZ(), player.getYaw(), player.getPitch());
-                LOGGER.info("认证完成，已将玩家 {} 传送回原位置。", playerName);
-            } else {
-                success = restoreToSpawn(player) && success;
-            }
-            
-            GameMode modeToRestore = determineGameModeToRestore(originalMode, playerName);
-            if (modeToRestore != null) {
-                player.changeGameMode(modeToRestore);
-            } else {
-                success = false;
-            }
-            
-            if (player.hasStatusEffect(StatusEffects.BLINDNESS)) {
-                player.removeStatusEffect(StatusEffects.BLINDNESS);
-                LOGGER.info("认证完成，已移除玩家 {} 的失明效果。", playerName);
-            }
-            
-            if (wasOp != null && wasOp && serverInstance != null) {
-                serverInstance.getPlayerManager().addToOperators(player.getGameProfile());
-                LOGGER.info("已恢复玩家 {} 的 OP 权限。", playerName);
-            } else if (wasOp == null) {
-                LOGGER.warn("玩家 {} (UUID {}) 的原始 OP 状态在恢复时丢失。", playerName, playerUuid);
-            }
-        } else {
+        if (player != null && session.isApplied()) {
+            success = player.restoreState(session.originalState());
+            LOGGER.info("认证完成，已恢复玩家 {} 认证前的位置、游戏模式与状态效果。", player.getName());
+        } else if (player == null) {
             LOGGER.warn("无法恢复 UUID {} 的玩家状态（玩家不在线）。", playerUuid);
-            cleanupPlayerState(playerUuid);
             success = false;
         }
         
-        authenticatingPlayers.remove(playerUuid);
-        return success;
+        closeSession(session, player);
+        if (!success) {
+            LOGGER.warn("玩家 {} 的状态未能完全恢复。", playerUuid);
+        }
     }
     
     public void cleanupPlayerState(UUID playerUuid) {
-        authenticatingPlayers.remove(playerUuid);
-        originalGameModes.remove(playerUuid);
-        initialPositions.remove(playerUuid);
-        originalPositionsBeforeAuth.remove(playerUuid);
-        originalOpStatus.remove(playerUuid);
+        AuthSession session = sessions.get(playerUuid);
+        if (session != null) {
+            closeSession(session, server.getPlayer(playerUuid));
+        }
     }
     
-    public void handlePlayerDisconnect(ServerPlayerEntity player, MinecraftServer server) {
+    public void handlePlayerDisconnect(PlayerHandle player) {
         UUID playerUuid = player.getUuid();
-        String playerName = player.getName().getString();
+        String playerName = player.getName();
         
-        if (!authenticatingPlayers.contains(playerUuid)) {
-            originalOpStatus.remove(playerUuid);
+        AuthSession session = sessions.get(playerUuid);
+        if (session == null || !closeSession(session, player)) {
             return;
         }
         
         LOGGER.info("玩家 {} ({}) 在认证过程中断开连接，尝试在保存前恢复状态...", playerName, playerUuid);
         
-        GameMode originalMode = originalGameModes.get(playerUuid);
-        Vec3d originalPos = originalPositionsBeforeAuth.get(playerUuid);
-        Boolean wasOp = originalOpStatus.get(playerUuid);
+        if (!session.isApplied()) {
+            // 认证状态尚未设置，位置与游戏模式未被改动
+            LOGGER.info("玩家 {} 的认证状态尚未设置，无需恢复位置与游戏模式。", playerName);
+            return;
+        }
         
-        boolean restoredSomething = false;
+        boolean restored = false;
         try {
-            if (originalPos != null) {
-                player.networkHandler.requestTeleport(originalPos.getX(), originalPos.getY(), originalPos.getZ(), player.getYaw(), player.getPitch());
-                LOGGER.info("已请求将玩家 {} 传送回位置 {}，以便断开前保存。", playerName, originalPos);
-                restoredSomething = true;
-            }
-            
-            GameMode modeToRestore = determineGameModeToRestore(originalMode, playerName);
-            if (modeToRestore != null && player.interactionManager.getGameMode() != modeToRestore) {
-                player.changeGameMode(modeToRestore);
-                LOGGER.info("已恢复玩家 {} 的游戏模式为 {}。", playerName, modeToRestore);
-                restoredSomething = true;
-            }
-            
-            if (player.hasStatusEffect(StatusEffects.BLINDNESS)) {
-                player.removeStatusEffect(StatusEffects.BLINDNESS);
-                LOGGER.info("已移除玩家 {} 的失明效果。", playerName);
-                restoredSomething = true;
-            }
-            
-            if (wasOp != null && wasOp && !server.getPlayerManager().isOperator(player.getGameProfile())) {
-                server.getPlayerManager().addToOperators(player.getGameProfile());
-                LOGGER.info("已恢复玩家 {} 的 OP 权限。", playerName);
-                restoredSomething = true;
-            }
+            restored = player.restoreState(session.originalState());
         } catch (Exception e) {
             LOGGER.error("尝试在断开连接时恢复玩家 {} 状态时发生错误：{}", playerName, e.getMessage(), e);
         }
         
-        cleanupPlayerState(playerUuid);
-        if (restoredSomething) {
-            LOGGER.info("已清理玩家 {} 的认证状态（断开前已恢复部分状态）。", playerName);
+        if (restored) {
+            LOGGER.info("已清理玩家 {} 的认证状态（断开前已恢复状态）。", playerName);
         } else {
             LOGGER.warn("已清理玩家 {} 的认证状态（断开前状态恢复可能未完全执行）。", playerName);
         }
     }
     
-    public void enforcePositionFreeze() {
-        for (UUID playerUuid : Set.copyOf(authenticatingPlayers)) {
-            ServerPlayerEntity player = (serverInstance != null) ? serverInstance.getPlayerManager().getPlayer(playerUuid) : null;
-            Vec3d initialPos = initialPositions.get(playerUuid);
-            
-            if (player != null && initialPos != null) {
-                if (player.getX() != initialPos.getX() || player.getY() != initialPos.getY() || player.getZ() != initialPos.getZ()) {
-                    player.networkHandler.requestTeleport(initialPos.getX(), initialPos.getY(), initialPos.getZ(), player.getYaw(), player.getPitch());
-                }
-            } else if (player == null || initialPos == null) {
-                LOGGER.warn("检测到玩家 UUID {} 的认证状态异常，正在清理...", playerUuid);
-                cleanupPlayerState(playerUuid);
-            }
-        }
-    }
-    
-    public void forcePlayerIntoAuthenticationState(ServerPlayerEntity player) {
+    public void forcePlayerIntoAuthenticationState(PlayerHandle player) {
         UUID playerUuid = player.getUuid();
-        String playerName = player.getName().getString();
         
-        LOGGER.info("玩家 {} ({}) 密码已重置，强制进入认证状态。", playerName, playerUuid);
+        LOGGER.info("玩家 {} ({}) 密码已重置，强制进入认证状态。", player.getName(), playerUuid);
         
-        authenticatingPlayers.add(playerUuid);
-        originalGameModes.put(playerUuid, player.interactionManager.getGameMode());
-        
-        Vec3d originalPos = player.getPos();
-        originalPositionsBeforeAuth.put(playerUuid, originalPos);
+        // 仍在认证中（包括已通过认证、尚未恢复状态）时保留原会话的原始状态，尚未执行的恢复随之取消
+        if (!sessions.resetToRegistration(playerUuid)) {
+            AuthSession session = new AuthSession(
+                playerUuid,
+                AuthSession.State.PENDING_REGISTER,
+                player.captureState(),
+                null,
+                System.nanoTime()
+            );
+            if (!openSession(player, session)) {
+                return;
+            }
+        }
         
-        Vec3d safePos = calculateSafeSpawnPosition(serverInstance, playerName);
-        initialPositions.put(playerUuid, safePos);
+        // 单个玩家的重置不经过入场队列，立即设置
+        applyLimbo(playerUuid);
+        player.sendMessage(SafeserverConstants.RESET_PASSWORD_MESSAGE);
+        player.sendMessage(SafeserverConstants.RESET_PASSWORD_PROMPT);
+    }
+    
+    // 入场队列任务：为仍在认证中的玩家切换旁观模式、传送至安全位置并添加失明效果
+    private void applyLimbo(UUID playerUuid) {
+        AuthSession session = sessions.get(playerUuid);
+        if (session == null || session.isApplied() || session.state() == AuthSession.State.RESTORING) {
+            return;
+        }
+        PlayerHandle player = server.getPlayer(playerUuid);
+        if (player == null) {
+            return;
+        }
         
-        boolean wasOp = serverInstance.getPlayerManager().isOperator(player.getGameProfile());
-        originalOpStatus.put(playerUuid, wasOp);
-        if (wasOp) {
-            serverInstance.getPlayerManager().removeFromOperators(player.getGameProfile());
-            LOGGER.info("玩家 {} ({}) 在线时密码被重置，已临时移除 OP 权限。", playerName, playerUuid);
+        String playerName = player.getName();
+        SpawnPoint safePos = calculateSafeSpawnPosition(playerName);
+        if (!sessions.replace(session, session.withFreezePosition(safePos))) {
+            return;
         }
         
-        player.changeGameMode(GameMode.SPECTATOR);
-        player.networkHandler.requestTeleport(safePos.getX(), safePos.getY(), safePos.getZ(), 0, 0);
-        player.sendMessage(Text.literal(SafeserverConstants.RESET_PASSWORD_MESSAGE), false);
-        player.sendMessage(Text.literal(SafeserverConstants.RESET_PASSWORD_PROMPT), false);
+        player.enterLimbo(safePos);
+        
+        LOGGER.info("已为玩家 {} 设置旁观模式和失明效果，进入认证流程。", playerName);
     }
     
-    private Vec3d calculateSafeSpawnPosition(MinecraftServer server, String playerName) {
-        ServerWorld overworld = server.getWorld(World.OVERWORLD);
-        if (overworld != null) {
-            BlockPos spawnPos = overworld.getSpawnPos();
-            int safeY = overworld.getTopY(Heightmap.Type.MOTION_BLOCKING_NO_LEAVES, spawnPos.getX(), spawnPos.getZ());
-            return new Vec3d(
-                spawnPos.getX() + SafeserverConstants.SAFE_SPAWN_CENTER_OFFSET, 
-                safeY + SafeserverConstants.SAFE_SPAWN_Y_OFFSET, 
-                spawnPos.getZ() + SafeserverConstants.SAFE_SPAWN_CENTER_OFFSET
-            );
-        } else {
-            LOGGER.warn("无法获取主世界以确定玩家 {} 的出生点，使用备用坐标。", playerName);
-            return new Vec3d(
-                SafeserverConstants.SAFE_SPAWN_CENTER_OFFSET, 
-                SafeserverConstants.FALLBACK_Y_COORDINATE, 
-                SafeserverConstants.SAFE_SPAWN_CENTER_OFFSET
-            );
+    // 登记会话并为玩家打上认证标记；已有会话时返回 false
+    private boolean openSession(PlayerHandle player, AuthSession session) {
+        if (!sessions.open(session, player)) {
+            return false;
         }
+        refreshPermissions(player);
+        return true;
     }
     
-    private boolean restoreToSpawn(ServerPlayerEntity player) {
-        String playerName = player.getName().getString();
-        LOGGER.warn("无法找到玩家 {} 的原始位置，正在将其传送至出生点。", playerName);
-        
-        if (serverInstance != null) {
-            ServerWorld overworld = serverInstance.getWorld(World.OVERWORLD);
-            if (overworld != null) {
-                BlockPos spawnPos = overworld.getSpawnPos();
-                int spawnY = overworld.getTopY(Heightmap.Type.MOTION_BLOCKING_NO_LEAVES, spawnPos.getX(), spawnPos.getZ());
-                player.networkHandler.requestTeleport(
-                    spawnPos.getX() + SafeserverConstants.SAFE_SPAWN_CENTER_OFFSET, 
-                    spawnY, 
-                    spawnPos.getZ() + SafeserverConstants.SAFE_SPAWN_CENTER_OFFSET, 
-                    overworld.getSpawnAngle(), 
-                    0.0f
-                );
-                return true;
-            } else {
-                LOGGER.error("无法获取主世界，无法将玩家 {} 传送至出生点！", playerName);
-                return false;
-            }
-        } else {
-            LOGGER.error("无法获取服务器实例，无法将玩家 {} 传送至出生点！", playerName);
+    // 移除会话并清除认证标记；会话已被其他路径移除时返回 false
+    private boolean closeSession(AuthSession session, PlayerHandle player) {
+        if (!sessions.close(session, player)) {
             return false;
         }
+        if (player != null) {
+            refreshPermissions(player);
+        }
+        return true;
     }
     
-    private GameMode determineGameModeToRestore(GameMode originalMode, String playerName) {
-        if (originalMode != null) {
-            if (originalMode == GameMode.SPECTATOR) {
-                if (serverInstance != null) {
-                    GameMode defaultMode = serverInstance.getDefaultGameMode();
-                    LOGGER.info("原始游戏模式为旁观模式，为玩家 {} 恢复为服务器默认模式（{}）。", playerName, defaultMode);
-                    return defaultMode;
-                } else {
-                    LOGGER.error("无法获取服务器实例，无法确定玩家 {} 的默认游戏模式，恢复可能失败。", playerName);
-                    return null;
-                }
-            } else {
-                LOGGER.info("已为玩家 {} 恢复原始游戏模式（{}）。", playerName, originalMode);
-                return originalMode;
-            }
-        } else {
-            LOGGER.warn("无法找到玩家 {} 的原始游戏模式，将使用服务器默认模式。", playerName);
-            if (serverInstance != null) {
-                return serverInstance.getDefaultGameMode();
-            } else {
-                LOGGER.error("无法获取服务器实例，无法确定玩家 {} 的默认游戏模式，恢复可能失败。", playerName);
-                return null;
-            }
+    // 认证标记变化后可用的命令（以及 OP 的有效权限等级）随之变化：进入认证时改为只含 /login 与 /setpassword 的命令树，认证后恢复完整命令树
+    private void refreshPermissions(PlayerHandle player) {
+        player.refreshCommandTree();
+    }
+    
+    private SpawnPoint calculateSafeSpawnPosition(String playerName) {
+        SpawnPoint limboPos = spawnLocator.getLimboSpawn();
+        if (limboPos != null) {
+            return limboPos;
         }
+        LOGGER.warn("无法获取主世界以确定玩家 {} 的出生点，使用备用坐标。", playerName);
+        return new SpawnPoint(
+            SafeserverConstants.SAFE_SPAWN_CENTER_OFFSET,
+            SafeserverConstants.FALLBACK_Y_COORDINATE,
+            SafeserverConstants.SAFE_SPAWN_CENTER_OFFSET
+        );
     }
 }
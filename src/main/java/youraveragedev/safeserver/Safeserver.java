@@ -7,44 +7,37 @@ import net.fabricmc.fabric.api.event.player.AttackEntityCallback;
 import net.fabricmc.fabric.api.event.player.UseBlockCallback;
 import net.fabricmc.fabric.api.event.player.UseEntityCallback;
 import net.fabricmc.fabric.api.event.player.UseItemCallback;
-import net.fabricmc.fabric.api.message.v1.ServerMessageEvents;
+import net.fabricmc.fabric.api.networking.v1.PayloadTypeRegistry;
 import net.fabricmc.fabric.api.networking.v1.ServerPlayConnectionEvents;
-import net.minecraft.server.network.ServerPlayerEntity;
 import net.minecraft.text.Text;
 import net.minecraft.util.ActionResult;
-import net.minecraft.util.math.Vec3d;
-import net.minecraft.world.GameMode;
-import net.minecraft.world.Heightmap;
-import net.minecraft.world.World;
-import net.minecraft.server.world.ServerWorld;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.util.Map;
-import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
-
+import youraveragedev.safeserver.auth.AuthPipeline;
+import youraveragedev.safeserver.auth.CompanionAuthenticator;
+import youraveragedev.safeserver.auth.LoginThrottle;
+import youraveragedev.safeserver.auth.PasswordHashingEngine;
+import youraveragedev.safeserver.auth.SessionTicketCache;
 import youraveragedev.safeserver.command.AuthCommands;
+import youraveragedev.safeserver.gate.AuthGate;
+import youraveragedev.safeserver.metrics.MetricsExporter;
+import youraveragedev.safeserver.metrics.SafeserverMetrics;
+import youraveragedev.safeserver.network.CompanionProtocol;
+import youraveragedev.safeserver.storage.CachingCredentialStore;
+import youraveragedev.safeserver.storage.CredentialStore;
+import youraveragedev.safeserver.storage.H2CredentialStore;
+import youraveragedev.safeserver.storage.JournaledCredentialStore;
+import youraveragedev.safeserver.storage.MappedCredentialStore;
+import youraveragedev.safeserver.storage.PreloadingCredentialStore;
 import net.fabricmc.loader.api.FabricLoader;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.reflect.TypeToken;
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.IOException;
-import java.lang.reflect.Type;
-import java.nio.file.Files;
 import java.nio.file.Path;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
 import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
 import net.minecraft.server.MinecraftServer;
-import net.minecraft.entity.effect.StatusEffectInstance;
-import net.minecraft.entity.effect.StatusEffects;
+import net.minecraft.util.profiler.Profiler;
+import net.minecraft.util.profiler.Profilers;
 
 public class Safeserver implements ModInitializer {
     public static final String MOD_ID = "safeserver";
@@ -52,122 +45,189 @@ public class Safeserver implements ModInitializer {
     // 日志记录器
     public static final Logger LOGGER = LoggerFactory.getLogger(MOD_ID);
 
-    // 密码存储（线程安全）
-    private final ConcurrentHashMap<String, String> playerPasswords = new ConcurrentHashMap<>();
+    // 凭据存储后端
+    private CredentialStore credentialStore;
     
     // 玩家状态管理
-    private final PlayerStateManager stateManager = new PlayerStateManager();
+    private PlayerStateManager stateManager;
+
+    // 入场调度队列（认证状态的设置与恢复按 tick 预算分批执行）
+    private JoinAdmissionQueue admissionQueue;
+
+    // 认证等待区坐标缓存（区块由票据保持加载）
+    private final LimboSpawnCache limboSpawn = new LimboSpawnCache();
+
+    // 认证核心访问服务器与玩家的适配层
+    private final MinecraftServerFacade serverFacade = new MinecraftServerFacade(limboSpawn);
+
+    // 认证核心（加入、断开、注册、登录、改密与重置）
+    private AuthService authService;
+
+    // 快速重连票据（同一地址短时间内重连时跳过认证）
+    private SessionTicketCache sessionTickets;
+
+    // 登录限流（在提交哈希任务前拒绝过于频繁的请求）
+    private LoginThrottle loginThrottle;
+
+    // 定期写出 Prometheus 格式指标
+    private MetricsExporter metricsExporter;
     
-    // 异步文件操作执行器
-    private final Executor fileExecutor = Executors.newSingleThreadExecutor(r -> {
-        Thread t = new Thread(r, "Safeserver-FileIO");
-        t.setDaemon(true);
-        return t;
-    });
+    // 模组配置
+    private SafeserverConfig config;
 
-    // JSON 处理器
-    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
-    private static final Type PASSWORD_MAP_TYPE = new TypeToken<Map<String, String>>() {}.getType();
-    private Path passwordFilePath;
+    // 异步认证流水线（哈希在工作线程执行）
+    private AuthPipeline authPipeline;
 
-    private MinecraftServer serverInstance;
+    // 密码哈希引擎（启动时按 CPU 预算校准）
+    private PasswordHashingEngine hashingEngine;
 
     @Override
     public void onInitialize() {
         LOGGER.info("正在初始化 SafeServer 安全认证系统...");
 
-        // 设置密码文件路径
-        passwordFilePath = FabricLoader.getInstance().getConfigDir().resolve(MOD_ID).resolve("passwords.json");
-
-        // 加载已保存的密码
-        loadPasswords();
+        // 读取配置
+        Path configDir = FabricLoader.getInstance().getConfigDir().resolve(MOD_ID);
+        config = SafeserverConfig.load(configDir.resolve("safeserver.properties"));
+
+        hashingEngine = PasswordHashingEngine.calibrate(config.getLong(SafeserverConfig.HASH_BUDGET_MILLIS), config.getInt(SafeserverConfig.HASH_MIN_ITERATIONS));
+        authPipeline = new AuthPipeline(config.getInt(SafeserverConfig.AUTH_WORKER_THREADS), config.getInt(SafeserverConfig.AUTH_QUEUE_CAPACITY));
+        loginThrottle = new LoginThrottle(
+                config.getInt(SafeserverConfig.THROTTLE_SLOTS),
+                config.getInt(SafeserverConfig.THROTTLE_PLAYER_BURST),
+                config.getInt(SafeserverConfig.THROTTLE_PLAYER_PER_MINUTE),
+                config.getInt(SafeserverConfig.THROTTLE_ADDRESS_BURST),
+                config.getInt(SafeserverConfig.THROTTLE_ADDRESS_PER_MINUTE),
+                config.getLong(SafeserverConfig.THROTTLE_BACKOFF_BASE_MILLIS),
+                config.getLong(SafeserverConfig.THROTTLE_BACKOFF_MAX_MILLIS));
+
+        // 创建凭据存储，已保存的密码在后台线程加载，与世界加载并行
+        credentialStore = new PreloadingCredentialStore(createCredentialStore(configDir));
+        credentialStore.load();
         
         // 初始化状态管理器
-        stateManager.setServerInstance(null);
+        admissionQueue = new JoinAdmissionQueue(config.getLong(SafeserverConfig.ADMISSION_TICK_BUDGET_MILLIS));
+        stateManager = new PlayerStateManager(admissionQueue, serverFacade, serverFacade);
+        sessionTickets = new SessionTicketCache(config.getLong(SafeserverConfig.SESSION_RESUME_TTL_SECONDS), config.getInt(SafeserverConfig.SESSION_RESUME_MAX_ENTRIES));
+        CompanionAuthenticator companion = createCompanionAuthenticator(configDir);
+        authService = new AuthService(credentialStore, stateManager, admissionQueue, authPipeline, hashingEngine, loginThrottle, sessionTickets, companion, serverFacade);
+        LimboSpawnCache.registerTicketType();
+        authService.registerMetricGauges();
+        metricsExporter = new MetricsExporter(configDir.resolve("metrics.prom"), config.getLong(SafeserverConfig.METRICS_EXPORT_INTERVAL_SECONDS));
+        metricsExporter.start();
+
+        // 伴随密钥通道在客户端与服务器上都需注册，与是否启用握手无关
+        PayloadTypeRegistry.playS2C().register(CompanionProtocol.KeyPayload.ID, CompanionProtocol.KeyPayload.CODEC);
+        if (companion != null) {
+            new CompanionLoginHandler(authService).register();
+        }
 
         // 玩家加入事件
-        ServerPlayConnectionEvents.JOIN.register((handler, sender, server) -> {
-            ServerPlayerEntity player = handler.player;
-            UUID playerUuid = player.getUuid();
-            String playerUuidString = playerUuid.toString();
-            String playerName = player.getName().getString();
-
-            LOGGER.info("玩家 {} ({}) 加入游戏，正在检查认证状态...", playerName, playerUuidString);
-
-            if (playerPasswords.containsKey(playerUuidString)) {
-                // 老玩家需登录
-                if (!stateManager.isPlayerAuthenticating(playerUuid)) {
-                    LOGGER.info("玩家 {} 需要登录。", playerName);
-                    stateManager.applyAuthenticationState(player, server);
-                    stateManager.sendWelcomeMessages(player, true);
-                }
-            } else {
-                // 新玩家需设置密码
-                if (!stateManager.isPlayerAuthenticating(playerUuid)) {
-                    LOGGER.info("玩家 {} 需要设置密码。", playerName);
-                    stateManager.applyAuthenticationState(player, server);
-                    stateManager.sendWelcomeMessages(player, false);
-                }
-            }
-        });
+        ServerPlayConnectionEvents.JOIN.register((handler, sender, server) -> authService.onPlayerJoin(serverFacade.wrap(handler.player)));
 
         // 玩家断开连接事件
-        ServerPlayConnectionEvents.DISCONNECT.register((handler, server) -> {
-            ServerPlayerEntity player = handler.player;
-            UUID playerUuid = player.getUuid();
-            String playerName = player.getName().getString();
-            
-            stateManager.handlePlayerDisconnect(player, server);
-            
-            // 安全性机制：断开时移除 OP 权限
-            if (server.getPlayerManager().isOperator(player.getGameProfile())) {
-                server.getPlayerManager().removeFromOperators(player.getGameProfile());
-                LOGGER.info("玩家 {} ({}) 断开连接，已移除 OP 权限以确保安全。", playerName, playerUuid);
-            }
-        });
+        ServerPlayConnectionEvents.DISCONNECT.register((handler, server) -> authService.onPlayerDisconnect(serverFacade.wrap(handler.player)));
 
         // 注册命令
         CommandRegistrationCallback.EVENT.register((dispatcher, registryAccess, environment) -> {
-            AuthCommands.registerCommands(dispatcher, this);
+            AuthCommands.registerCommands(dispatcher, authService);
             LOGGER.info("已注册安全认证命令。");
         });
 
         // 注册游戏行为拦截事件
         registerGameplayBlockingEvents();
 
-        // 注册服务器 Tick 用于位置冻结
+        // 记录服务器实例（位置冻结由 ServerPlayNetworkHandlerMixin 在收到移动数据包时执行）
+        ServerLifecycleEvents.SERVER_STARTING.register(serverFacade::bind);
+
+        // 世界加载完成后预先计算等待区坐标并加载其区块
+        ServerLifecycleEvents.SERVER_STARTED.register(limboSpawn::get);
+
+        // 每个 tick 结束时在时间预算内处理入场队列
         ServerTickEvents.END_SERVER_TICK.register(this::onEndTick);
+
+        // 服务器停止时等待所有待写入的凭据变更落盘
+        ServerLifecycleEvents.SERVER_STOPPED.register(server -> {
+            authService.shutdown();
+            limboSpawn.clear();
+            metricsExporter.stop();
+            AuthGate.reset();
+            LOGGER.info("服务器已停止，凭据变更已全部写入磁盘。");
+        });
         
-        LOGGER.info("SafeServer 初始化完成！共加载 {} 个密码。", playerPasswords.size());
+        LOGGER.info("SafeServer 初始化完成！凭据正在后台加载。");
     }
 
     private void onEndTick(MinecraftServer server) {
-        this.serverInstance = server;
-        stateManager.setServerInstance(server);
-        stateManager.enforcePositionFreeze(); // 强制冻结认证中玩家的位置
+        Profiler profiler = Profilers.get();
+        limboSpawn.refresh(server);
+        profiler.push("safeserver_admission");
+        authService.runAdmission();
+        profiler.pop();
+    }
+
+    // 根据配置选择凭据存储后端
+    private CredentialStore createCredentialStore(Path configDir) {
+        Path passwordFilePath = configDir.resolve("passwords.json");
+        long flushMaxDelayMillis = config.getLong(SafeserverConfig.FLUSH_MAX_DELAY_MILLIS);
+        String backend = config.getString(SafeserverConfig.STORAGE_BACKEND);
+        if (backend.equalsIgnoreCase("mapped")) {
+            LOGGER.info("使用内存映射凭据存储。");
+            return withHotAccountCache(new MappedCredentialStore(configDir.resolve("passwords.bin"), passwordFilePath, flushMaxDelayMillis));
+        }
+        if (backend.equalsIgnoreCase("h2")) {
+            LOGGER.info("使用嵌入式 H2 数据库凭据存储。");
+            return withHotAccountCache(new H2CredentialStore(configDir.resolve("passwords"), passwordFilePath, flushMaxDelayMillis));
+        }
+        if (!backend.equalsIgnoreCase("json")) {
+            LOGGER.warn("未知的凭据存储后端 {}，使用默认的 JSON 存储。", backend);
+        }
+        JournaledCredentialStore store = new JournaledCredentialStore(passwordFilePath, flushMaxDelayMillis);
+        long watchQuietMillis = config.getLong(SafeserverConfig.STORAGE_WATCH_QUIET_MILLIS);
+        if (watchQuietMillis > 0) {
+            store.enableHotReload(watchQuietMillis);
+        }
+        return store;
+    }
+
+    // 读取或生成伴随模组服务器密钥；未启用或密钥不可用时返回 null，所有玩家在游戏内认证
+    private CompanionAuthenticator createCompanionAuthenticator(Path configDir) {
+        if (!config.getBoolean(SafeserverConfig.AUTH_COMPANION_HANDSHAKE)) {
+            return null;
+        }
+        try {
+            CompanionAuthenticator companion = CompanionAuthenticator.load(configDir.resolve("companion.key"));
+            LOGGER.info("已启用客户端伴随模组的登录阶段握手。");
+            return companion;
+        } catch (IOException e) {
+            LOGGER.error("无法读取或生成伴随模组服务器密钥，登录阶段握手已禁用：{}", e.getMessage());
+            return null;
+        }
+    }
+
+    // 为不常驻堆内存的后端加上有界缓存，只保留活跃玩家的凭据
+    private CredentialStore withHotAccountCache(CredentialStore backend) {
+        int maxEntries = config.getInt(SafeserverConfig.STORAGE_CACHE_MAX_ENTRIES);
+        if (maxEntries <= 0) {
+            return backend;
+        }
+        CachingCredentialStore cache = new CachingCredentialStore(backend, maxEntries);
+        SafeserverMetrics.registerGauge("safeserver_credential_cache_entries", "凭据缓存中的条目数", cache::getCachedCount);
+        SafeserverMetrics.registerGauge("safeserver_credential_cache_hits_total", "凭据缓存命中次数", cache::getHits);
+        SafeserverMetrics.registerGauge("safeserver_credential_cache_misses_total", "凭据缓存未命中次数", cache::getMisses);
+        SafeserverMetrics.registerGauge("safeserver_credential_cache_evictions_total", "凭据缓存淘汰次数", cache::getEvictions);
+        SafeserverMetrics.registerGauge("safeserver_credential_cache_rejections_total", "因访问频率过低未放入凭据缓存的次数", cache::getRejections);
+        LOGGER.info("已启用凭据缓存，最多保留 {} 个账号。", maxEntries);
+        return cache;
     }
 
     private void registerGameplayBlockingEvents() {
-        // 拦截命令（仅允许 /login 和 /setpassword）
-        ServerMessageEvents.COMMAND_MESSAGE.register((message, source, params) -> {
-            ServerPlayerEntity player = source.getPlayer();
-            if (player != null && stateManager.isPlayerAuthenticating(player.getUuid())) {
-                String fullCommand = message.getContent().getString().trim();
-                String commandRoot = fullCommand.split(" ", 2)[0];
-                if (commandRoot.startsWith("/")) {
-                    commandRoot = commandRoot.substring(1);
-                }
-
-                if (!commandRoot.equalsIgnoreCase("login") && !commandRoot.equalsIgnoreCase("setpassword")) {
-                    player.sendMessage(Text.literal(SafeserverConstants.AUTH_COMMAND_MESSAGE), false);
-                    Safeserver.LOGGER.debug("已阻止未认证玩家 {} 使用命令：{}", player.getName().getString(), fullCommand);
-                }
-            }
-        });
+        // 命令由 CommandManagerMixin 在命令树上限制：认证中的玩家只能看到并使用 /login 和 /setpassword
 
         // 拦截破坏方块
         AttackBlockCallback.EVENT.register((player, world, hand, pos, direction) -> {
-            if (stateManager.isPlayerAuthenticating(player.getUuid())) {
+            boolean gated = AuthGate.isGated(player);
+            SafeserverMetrics.recordGate(SafeserverMetrics.GateCallback.ATTACK_BLOCK, gated);
+            if (gated) {
                 player.sendMessage(Text.literal(SafeserverConstants.AUTH_INTERACT_MESSAGE), true);
                 return ActionResult.FAIL;
             }
@@ -176,7 +236,9 @@ public class Safeserver implements ModInitializer {
 
         // 拦截使用方块
         UseBlockCallback.EVENT.register((player, world, hand, hitResult) -> {
-            if (stateManager.isPlayerAuthenticating(player.getUuid())) {
+            boolean gated = AuthGate.isGated(player);
+            SafeserverMetrics.recordGate(SafeserverMetrics.GateCallback.USE_BLOCK, gated);
+            if (gated) {
                 player.sendMessage(Text.literal(SafeserverConstants.AUTH_INTERACT_MESSAGE), true);
                 return ActionResult.FAIL;
             }
@@ -185,7 +247,9 @@ public class Safeserver implements ModInitializer {
 
         // 拦截使用物品
         UseItemCallback.EVENT.register((player, world, hand) -> {
-            if (stateManager.isPlayerAuthenticating(player.getUuid())) {
+            boolean gated = AuthGate.isGated(player);
+            SafeserverMetrics.recordGate(SafeserverMetrics.GateCallback.USE_ITEM, gated);
+            if (gated) {
                 return ActionResult.FAIL;
             }
             return ActionResult.PASS;
@@ -193,7 +257,9 @@ public class Safeserver implements ModInitializer {
 
         // 拦截攻击实体
         AttackEntityCallback.EVENT.register((player, world, hand, entity, hitResult) -> {
-            if (stateManager.isPlayerAuthenticating(player.getUuid())) {
+            boolean gated = AuthGate.isGated(player);
+            SafeserverMetrics.recordGate(SafeserverMetrics.GateCallback.ATTACK_ENTITY, gated);
+            if (gated) {
                 player.sendMessage(Text.literal(SafeserverConstants.AUTH_INTERACT_MESSAGE), true);
                 return ActionResult.FAIL;
             }
@@ -202,7 +268,9 @@ public class Safeserver implements ModInitializer {
 
         // 拦截交互实体（如骑乘、交易）
         UseEntityCallback.EVENT.register((player, world, hand, entity, hitResult) -> {
-            if (stateManager.isPlayerAuthenticating(player.getUuid())) {
+            boolean gated = AuthGate.isGated(player);
+            SafeserverMetrics.recordGate(SafeserverMetrics.GateCallback.USE_ENTITY, gated);
+            if (gated) {
                 player.sendMessage(Text.literal(SafeserverConstants.AUTH_INTERACT_MESSAGE), true);
                 return ActionResult.FAIL;
             }
@@ -211,182 +279,4 @@ public class Safeserver implements ModInitializer {
 
         LOGGER.info("已注册游戏行为拦截事件监听器。");
     }
-
-    // 密码哈希（SHA-256）
-    public static String hashPassword(String password) {
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hash = digest.digest(password.getBytes(StandardCharsets.UTF_8));
-            StringBuilder hexString = new StringBuilder();
-            for (byte b : hash) {
-                String hex = Integer.toHexString(0xff & b);
-                if (hex.length() == 1) hexString.append('0');
-                hexString.append(hex);
-            }
-            return hexString.toString();
-        } catch (NoSuchAlgorithmException e) {
-            LOGGER.error("初始化 SHA-256 哈希失败。", e);
-            return SafeserverConstants.HASHING_ERROR_VALUE;
-        }
-    }
-
-    // 从文件加载密码
-    private void loadPasswords() {
-        if (Files.exists(passwordFilePath)) {
-            try (BufferedReader reader = Files.newBufferedReader(passwordFilePath)) {
-                Map<String, String> loadedMap = GSON.fromJson(reader, PASSWORD_MAP_TYPE);
-                if (loadedMap != null) {
-                    playerPasswords.putAll(loadedMap);
-                    LOGGER.info("已从 {} 成功加载密码。", passwordFilePath);
-                } else {
-                    LOGGER.warn("密码文件 {} 为空或包含无效 JSON。", passwordFilePath);
-                }
-            } catch (IOException | com.google.gson.JsonSyntaxException e) {
-                LOGGER.error("加载密码文件 {} 失败：{}", passwordFilePath, e.getMessage());
-            }
-        } else {
-            LOGGER.info("未找到密码文件 {}，首次保存时将自动创建。", passwordFilePath);
-        }
-    }
-
-    // 异步保存密码
-    private void savePasswords() {
-        CompletableFuture.runAsync(this::savePasswordsSync, fileExecutor)
-            .exceptionally(throwable -> {
-                LOGGER.error("异步保存密码失败", throwable);
-                return null;
-            });
-    }
-
-    private synchronized void savePasswordsSync() {
-        try {
-            Files.createDirectories(passwordFilePath.getParent());
-            try (BufferedWriter writer = Files.newBufferedWriter(passwordFilePath)) {
-                GSON.toJson(playerPasswords, writer);
-                LOGGER.info("已成功将密码保存至 {}", passwordFilePath);
-            } catch (IOException e) {
-                LOGGER.error("写入密码文件 {} 失败：{}", passwordFilePath, e.getMessage());
-            }
-        } catch (IOException e) {
-            LOGGER.error("创建密码文件目录 {} 失败：{}", passwordFilePath.getParent(), e.getMessage());
-        }
-    }
-
-    // 认证接口方法
-
-    public boolean isPlayerAuthenticating(UUID playerUuid) {
-        return stateManager.isPlayerAuthenticating(playerUuid);
-    }
-
-    public boolean hasPassword(UUID playerUuid) {
-        return playerPasswords.containsKey(playerUuid.toString());
-    }
-
-    public boolean registerPlayer(UUID playerUuid, String password) {
-        if (hasPassword(playerUuid)) {
-            return false;
-        }
-        String hashedPassword = hashPassword(password);
-        if (SafeserverConstants.HASHING_ERROR_VALUE.equals(hashedPassword)) {
-            LOGGER.error("因哈希错误，无法注册玩家 {}。", playerUuid);
-            return false;
-        }
-        playerPasswords.put(playerUuid.toString(), hashedPassword);
-        savePasswords();
-        boolean restored = stateManager.restorePlayerState(playerUuid);
-        if (!restored) {
-            LOGGER.warn("为玩家 {} 注册后无法完全恢复状态，但将继续执行。", playerUuid);
-        }
-        return true;
-    }
-
-    public boolean authenticatePlayer(UUID playerUuid, String password) {
-        if (!hasPassword(playerUuid) || !isPlayerAuthenticating(playerUuid)) {
-            return false;
-        }
-        String storedPasswordHash = playerPasswords.get(playerUuid.toString());
-        String providedPasswordHash = hashPassword(password);
-
-        if (storedPasswordHash.equals(providedPasswordHash)) {
-            boolean restored = stateManager.restorePlayerState(playerUuid);
-            if (!restored) {
-                LOGGER.warn("为玩家 {} 登录后无法完全恢复状态，但将继续执行。", playerUuid);
-            }
-            return true;
-        } else {
-            return false;
-        }
-    }
-
-    // 密码管理方法
-
-    public boolean changePlayerPassword(UUID playerUuid, String oldPassword, String newPassword) {
-        if (isPlayerAuthenticating(playerUuid)) {
-            LOGGER.warn("玩家 {} 尚未完成认证，无法更改密码。", playerUuid);
-            return false;
-        }
-        if (!hasPassword(playerUuid)) {
-            LOGGER.warn("玩家 {} 尚未设置密码，无法更改。", playerUuid);
-            return false;
-        }
-
-        String storedPasswordHash = playerPasswords.get(playerUuid.toString());
-        String providedOldPasswordHash = hashPassword(oldPassword);
-
-        if (!storedPasswordHash.equals(providedOldPasswordHash)) {
-            return false;
-        }
-
-        String newPasswordHash = hashPassword(newPassword);
-        if (SafeserverConstants.HASHING_ERROR_VALUE.equals(newPasswordHash)) {
-            LOGGER.error("因哈希错误，无法更改玩家 {} 的密码。", playerUuid);
-            return false;
-        }
-
-        playerPasswords.put(playerUuid.toString(), newPasswordHash);
-        savePasswords();
-        LOGGER.info("玩家 {} 成功更改密码。", playerUuid);
-        return true;
-    }
-
-    public boolean resetAndSetPassword(UUID playerUuid, String newPassword) {
-        if (isPlayerAuthenticating(playerUuid)) {
-            LOGGER.warn("玩家 {} 尚未完成认证，无法重置密码。", playerUuid);
-            return false;
-        }
-        if (!hasPassword(playerUuid)) {
-            LOGGER.warn("玩家 {} 尚未设置密码，无法重置。", playerUuid);
-            return false;
-        }
-
-        String newPasswordHash = hashPassword(newPassword);
-        if (SafeserverConstants.HASHING_ERROR_VALUE.equals(newPasswordHash)) {
-            LOGGER.error("因哈希错误，无法为玩家 {} 重置密码。", playerUuid);
-            return false;
-        }
-
-        playerPasswords.put(playerUuid.toString(), newPasswordHash);
-        savePasswords();
-        LOGGER.info("玩家 {} 使用 /setpassword 命令成功重置密码。", playerUuid);
-        return true;
-    }
-
-    public boolean resetPlayerPassword(UUID targetPlayerUuid) {
-        String targetUuidString = targetPlayerUuid.toString();
-        if (!playerPasswords.containsKey(targetUuidString)) {
-            return false;
-        }
-
-        playerPasswords.remove(targetUuidString);
-        savePasswords();
-
-        ServerPlayerEntity targetPlayer = (this.serverInstance != null) ? this.serverInstance.getPlayerManager().getPlayer(targetPlayerUuid) : null;
-        if (targetPlayer != null && !stateManager.isPlayerAuthenticating(targetPlayerUuid)) {
-            stateManager.forcePlayerIntoAuthenticationState(targetPlayer);
-        } else {
-            LOGGER.info("玩家 {} 的密码已重置（离线状态），下次登录需重新设置。", targetPlayerUuid);
-        }
-
-        return true;
-    }
 }
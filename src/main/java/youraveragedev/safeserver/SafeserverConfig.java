@@ -0,0 +1,166 @@
+package youraveragedev.safeserver;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * 安全服务器模组的可调参数，从 config/safeserver/safeserver.properties 读取。
+ * 文件中缺少的配置项会以默认值和说明追加到文件末尾。
+ */
+public final class SafeserverConfig {
+    private static final Logger LOGGER = LoggerFactory.getLogger("safeserver-config");
+
+    private static final List<Option> OPTIONS = new ArrayList<>();
+
+    // 凭据变更合并刷盘的最大延迟（毫秒）
+    public static final Option FLUSH_MAX_DELAY_MILLIS = option("storage.flushMaxDelayMillis", "200",
+            "凭据变更合并刷盘的最大延迟（毫秒），期间的多次变更只写一次磁盘");
+
+    // 凭据存储后端：json（JSON 快照加变更日志）、mapped（内存映射二进制文件）或 h2（嵌入式数据库）
+    public static final Option STORAGE_BACKEND = option("storage.backend", "json",
+            "凭据存储后端：json 为 JSON 快照加变更日志；mapped 为内存映射二进制文件；h2 为嵌入式 H2 数据库文件（mapped 与 h2 首次启用时自动从 JSON 导入）");
+
+    // json 后端：监视 passwords.json 的外部修改并增量重新加载
+    public static final Option STORAGE_WATCH_QUIET_MILLIS = option("storage.watchQuietMillis", "500",
+            "json 后端下，passwords.json 被外部工具修改并静默此时间（毫秒）后自动重新加载有变化的条目；0 为不监视");
+
+    // 非堆后端前的热点账号缓存容量
+    public static final Option STORAGE_CACHE_MAX_ENTRIES = option("storage.cacheMaxEntries", "4096",
+            "mapped 与 h2 后端前热点账号缓存的最大条目数，按访问频率保留在线玩家的凭据；0 为关闭（json 后端的凭据本身常驻内存，不使用此缓存）");
+
+    // 认证工作线程数与等待队列容量
+    public static final Option AUTH_WORKER_THREADS = option("auth.workerThreads", "2",
+            "执行密码哈希与校验的工作线程数");
+    public static final Option AUTH_QUEUE_CAPACITY = option("auth.queueCapacity", "64",
+            "认证任务等待队列容量，队列满时新的 /login 等请求会被直接拒绝");
+
+    // 客户端伴随模组：登录阶段以挑战应答完成认证
+    public static final Option AUTH_COMPANION_HANDSHAKE = option("auth.companionHandshake", "false",
+            "是否启用客户端伴随模组的登录阶段握手：安装了伴随模组且在本服认证过的客户端登录时自动完成认证，无需进入等待区输入 /login；启用后每次登录多一次登录查询往返");
+
+    // 单次密码哈希的 CPU 预算（毫秒），启动时据此校准 PBKDF2 迭代次数
+    public static final Option HASH_BUDGET_MILLIS = option("auth.hashBudgetMillis", "25",
+            "单次密码哈希的 CPU 预算（毫秒），启动时实测本机速度并据此选择 PBKDF2 迭代次数");
+    public static final Option HASH_MIN_ITERATIONS = option("auth.hashMinIterations", "10000",
+            "PBKDF2 迭代次数下限，校准结果低于此值时使用此值");
+
+    // 每 tick 用于处理入场与恢复任务的时间预算（毫秒）
+    public static final Option ADMISSION_TICK_BUDGET_MILLIS = option("admission.tickBudgetMillis", "5",
+            "每个 tick 用于设置认证状态和恢复玩家状态的时间预算（毫秒），超出的任务顺延到下一 tick；每 tick 至少处理一个");
+
+    // 快速重连：已认证玩家断开后在有效期内从同一地址重新加入可跳过认证
+    public static final Option SESSION_RESUME_TTL_SECONDS = option("session.resumeTtlSeconds", "60",
+            "已认证玩家断开后，在此时间（秒）内从同一 IP 重新加入可跳过登录；0 为关闭");
+    public static final Option SESSION_RESUME_MAX_ENTRIES = option("session.resumeMaxEntries", "1024",
+            "快速重连票据的最大数量，超出时淘汰最早签发的票据");
+
+    // 登录限流：按 UUID 与 IP 的令牌桶，以及密码错误后的指数退避
+    public static final Option THROTTLE_PLAYER_BURST = option("throttle.playerBurst", "5",
+            "每个玩家可连续发起的认证请求数（令牌桶容量）");
+    public static final Option THROTTLE_PLAYER_PER_MINUTE = option("throttle.playerPerMinute", "10",
+            "每个玩家每分钟恢复的认证请求数");
+    public static final Option THROTTLE_ADDRESS_BURST = option("throttle.addressBurst", "20",
+            "每个 IP 可连续发起的认证请求数（令牌桶容量）");
+    public static final Option THROTTLE_ADDRESS_PER_MINUTE = option("throttle.addressPerMinute", "60",
+            "每个 IP 每分钟恢复的认证请求数");
+    public static final Option THROTTLE_BACKOFF_BASE_MILLIS = option("throttle.backoffBaseMillis", "1000",
+            "密码错误后的首次退避时长（毫秒），之后每次连续错误翻倍");
+    public static final Option THROTTLE_BACKOFF_MAX_MILLIS = option("throttle.backoffMaxMillis", "300000",
+            "密码错误退避时长上限（毫秒）");
+    public static final Option THROTTLE_SLOTS = option("throttle.slots", "4096",
+            "限流表的槽位数，决定内存占用上限，与攻击来源数量无关");
+
+    // 指标文件写出间隔（秒）
+    public static final Option METRICS_EXPORT_INTERVAL_SECONDS = option("metrics.exportIntervalSeconds", "60",
+            "每隔多少秒把运行指标以 Prometheus 文本格式写入 config/safeserver/metrics.prom；0 为关闭");
+
+    private final Properties properties;
+
+    private SafeserverConfig(Properties properties) {
+        this.properties = properties;
+    }
+
+    public static SafeserverConfig load(Path configPath) {
+        Properties properties = new Properties();
+        if (Files.exists(configPath)) {
+            try (BufferedReader reader = Files.newBufferedReader(configPath, StandardCharsets.UTF_8)) {
+                properties.load(reader);
+            } catch (IOException e) {
+                LOGGER.error("读取配置文件 {} 失败，将使用默认配置：{}", configPath, e.getMessage());
+                return new SafeserverConfig(properties);
+            }
+        }
+
+        List<Option> missing = new ArrayList<>();
+        for (Option option : OPTIONS) {
+            if (!properties.containsKey(option.key())) {
+                missing.add(option);
+            }
+        }
+        if (!missing.isEmpty()) {
+            try {
+                Files.createDirectories(configPath.getParent());
+                try (BufferedWriter writer = Files.newBufferedWriter(configPath, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                    for (Option option : missing) {
+                        writer.write("# " + option.comment());
+                        writer.newLine();
+                        writer.write(option.key() + "=" + option.defaultValue());
+                        writer.newLine();
+                    }
+                }
+                LOGGER.info("已将 {} 个默认配置项写入 {}", missing.size(), configPath);
+            } catch (IOException e) {
+                LOGGER.error("写入默认配置文件 {} 失败：{}", configPath, e.getMessage());
+            }
+        }
+        return new SafeserverConfig(properties);
+    }
+
+    public String getString(Option option) {
+        return properties.getProperty(option.key(), option.defaultValue()).trim();
+    }
+
+    public long getLong(Option option) {
+        String value = getString(option);
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            LOGGER.warn("配置项 {} 的值 {} 无效，使用默认值 {}。", option.key(), value, option.defaultValue());
+            return Long.parseLong(option.defaultValue());
+        }
+    }
+
+    public boolean getBoolean(Option option) {
+        String value = getString(option);
+        if (value.equalsIgnoreCase("true") || value.equalsIgnoreCase("false")) {
+            return Boolean.parseBoolean(value);
+        }
+        LOGGER.warn("配置项 {} 的值 {} 无效，使用默认值 {}。", option.key(), value, option.defaultValue());
+        return Boolean.parseBoolean(option.defaultValue());
+    }
+
+    public int getInt(Option option) {
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, getLong(option)));
+    }
+
+    private static Option option(String key, String defaultValue, String comment) {
+        Option option = new Option(key, defaultValue, comment);
+        OPTIONS.add(option);
+        return option;
+    }
+
+    public record Option(String key, String defaultValue, String comment) {
+    }
+}
@@ -13,14 +13,21 @@ public final class SafeserverConstants {
     public static final double SAFE_SPAWN_CENTER_OFFSET = 0.5;
     public static final double FALLBACK_Y_COORDINATE = 65.0;
 
+    // 认证等待区区块票据半径（区块）
+    public static final int LIMBO_TICKET_RADIUS = 1;
+
+    // 密码变更日志超过此大小（字节）后压缩为快照
+    public static final long JOURNAL_COMPACTION_THRESHOLD_BYTES = 1024L * 1024L;
+
     // 认证期间交互提示
     public static final String AUTH_INTERACT_MESSAGE = "你必须完成认证才能进行此操作";
-    public static final String AUTH_COMMAND_MESSAGE = "你必须先认证请使用 /login 或 /setpassword 命令";
 
     // 欢迎消息
     public static final String WELCOME_BACK_MESSAGE = "欢迎回来！请使用 /login <密码> 登录";
     public static final String WELCOME_NEW_MESSAGE = "欢迎！本服务器需要身份认证";
     public static final String SET_PASSWORD_PROMPT = "请使用 /setpassword <密码> <确认密码> 设置你的密码";
+    public static final String COMPANION_AUTHENTICATED_MESSAGE = "欢迎回来！已通过客户端伴随模组自动登录";
+    public static final String SESSION_RESUMED_MESSAGE = "欢迎回来！你刚刚从同一地址登录过，已自动恢复会话";
     public static final String RESET_PASSWORD_MESSAGE = "你的密码已被管理员重置";
     public static final String RESET_PASSWORD_PROMPT = "请使用 /setpassword <新密码> <确认密码> 重新设置密码";
 
@@ -40,9 +47,9 @@ public final class SafeserverConstants {
     public static final String CHECK_OLD_PASSWORD_ERROR = "更改密码失败，请检查原密码是否正确";
     public static final String PLAYER_ONLY_COMMAND_ERROR = "此命令只能由玩家执行";
     public static final String CONTACT_ADMIN_ERROR = "请联系管理员寻求帮助";
-
-    // 哈希加密错误占位符
-    public static final String HASHING_ERROR_VALUE = "HASHING_ERROR";
+    public static final String AUTH_IN_PROGRESS_ERROR = "正在处理你的上一个请求，请稍候";
+    public static final String AUTH_BUSY_ERROR = "服务器认证繁忙，请稍后再试";
+    public static final String AUTH_THROTTLED_ERROR = "尝试过于频繁，请稍后再试";
 
     // 工具类禁止实例化
     private SafeserverConstants() {
@@ -0,0 +1,117 @@
+package youraveragedev.safeserver.auth;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * 异步认证流水线。
+ * 命令在服务器线程上捕获输入后，把哈希与校验交给有界工作线程池执行，
+ * 结果再通过服务器执行器回到服务器线程应用。每个玩家同一时刻最多只有一个任务在途，
+ * 队列满时直接拒绝，避免刷 /login 占满工作线程。
+ */
+public class AuthPipeline {
+    private static final Logger LOGGER = LoggerFactory.getLogger("safeserver-auth-pipeline");
+
+    public enum Status {
+        // 已接受，结果稍后在服务器线程回调
+        ACCEPTED,
+        // 该玩家已有任务在处理中
+        DUPLICATE,
+        // 工作队列已满
+        QUEUE_FULL,
+        // 被登录限流拒绝，未提交到流水线
+        THROTTLED
+    }
+
+    private final ThreadPoolExecutor workers;
+    // 在途玩家及其任务标记；只按标记移除，clear 之后旧任务的迟到回调不会移除新任务的条目
+    private final Map<UUID, Object> inFlightPlayers = new ConcurrentHashMap<>();
+    private final LongAdder rejectedDuplicates = new LongAdder();
+    private final LongAdder rejectedQueueFull = new LongAdder();
+
+    public AuthPipeline(int workerThreads, int queueCapacity) {
+        int threads = Math.max(1, workerThreads);
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(threads, threads, 30L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                r -> {
+                    Thread t = new Thread(r, "Safeserver-Auth-" + threadIndex.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.workers.allowCoreThreadTimeOut(true);
+    }
+
+    // 在工作线程执行 work，完成后在 serverExecutor 上以结果调用 onServerThread（work 异常时结果为 null）
+    public <T> Status submit(UUID playerUuid, Executor serverExecutor, Supplier<T> work, Consumer<T> onServerThread) {
+        Object ticket = new Object();
+        if (inFlightPlayers.putIfAbsent(playerUuid, ticket) != null) {
+            rejectedDuplicates.increment();
+            return Status.DUPLICATE;
+        }
+        try {
+            workers.execute(() -> {
+                T result = null;
+                try {
+                    result = work.get();
+                } catch (RuntimeException e) {
+                    LOGGER.error("玩家 {} 的认证任务执行失败", playerUuid, e);
+                }
+                T finalResult = result;
+                try {
+                    serverExecutor.execute(() -> {
+                        try {
+                            onServerThread.accept(finalResult);
+                        } finally {
+                            inFlightPlayers.remove(playerUuid, ticket);
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    // 服务器已停止，结果无处应用
+                    inFlightPlayers.remove(playerUuid, ticket);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlightPlayers.remove(playerUuid, ticket);
+            rejectedQueueFull.increment();
+            LOGGER.warn("认证队列已满，拒绝玩家 {} 的请求。", playerUuid);
+            return Status.QUEUE_FULL;
+        }
+        return Status.ACCEPTED;
+    }
+
+    public boolean isInFlight(UUID playerUuid) {
+        return inFlightPlayers.containsKey(playerUuid);
+    }
+
+    // 服务器停止时调用：已交给服务器执行器、但服务器停止前未执行的回调不会再运行，其在途标记在此丢弃
+    public void clear() {
+        inFlightPlayers.clear();
+    }
+
+    public int getQueueDepth() {
+        return workers.getQueue().size();
+    }
+
+    public long getRejectedDuplicates() {
+        return rejectedDuplicates.sum();
+    }
+
+    public long getRejectedQueueFull() {
+        return rejectedQueueFull.sum();
+    }
+}
@@ -0,0 +1,170 @@
+package youraveragedev.safeserver.auth;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import youraveragedev.safeserver.storage.Credential;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 客户端伴随模组的登录阶段握手。
+ * 玩家在游戏内认证成功后，服务器用服务器密钥和该玩家当前的凭据派生伴随密钥，发送给安装了伴随模组的客户端；
+ * 之后登录时，服务器在创建玩家实体前发送随机挑战，客户端用伴随密钥对挑战计算 HMAC 作答。
+ * 服务器不保存派生出的密钥，改密或重置后凭据变化，旧密钥随之失效。
+ * 握手通过后的加入许可绑定到作答的连接，只有同一连接进入游戏时才能跳过认证。
+ */
+public class CompanionAuthenticator {
+    private static final Logger LOGGER = LoggerFactory.getLogger("safeserver-companion");
+
+    public static final int NONCE_LENGTH = 32;
+    public static final int RESPONSE_LENGTH = 32;
+    private static final int SECRET_LENGTH = 32;
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final byte[] KEY_CONTEXT = "safeserver-companion-key".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] LOGIN_CONTEXT = "safeserver-companion-login".getBytes(StandardCharsets.US_ASCII);
+
+    // 握手通过后，玩家须在此时间内完成加入
+    private static final long APPROVAL_TTL_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private final byte[] serverSecret;
+    private final SecureRandom random = new SecureRandom();
+
+    // 加入许可：完成握手的连接（登录阶段与游戏阶段为同一对象）与有效期截止时间
+    private record Approval(Object connection, long expiresAt) {
+    }
+
+    // 已通过握手、尚未加入的玩家
+    private final Map<UUID, Approval> approvals = new ConcurrentHashMap<>();
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder unsupported = new LongAdder();
+
+    public CompanionAuthenticator(byte[] serverSecret) {
+        this.serverSecret = serverSecret.clone();
+    }
+
+    // 读取服务器密钥，不存在时生成并以仅所有者可读写的权限保存
+    public static CompanionAuthenticator load(Path secretFile) throws IOException {
+        if (Files.exists(secretFile)) {
+            byte[] secret = Files.readAllBytes(secretFile);
+            if (secret.length == SECRET_LENGTH) {
+                return new CompanionAuthenticator(secret);
+            }
+            LOGGER.warn("伴随密钥文件 {} 长度无效，将重新生成（已发放给客户端的密钥随之失效）。", secretFile);
+        }
+        byte[] secret = new byte[SECRET_LENGTH];
+        new SecureRandom().nextBytes(secret);
+        Files.createDirectories(secretFile.getParent());
+        Files.write(secretFile, secret);
+        try {
+            Files.setPosixFilePermissions(secretFile, PosixFilePermissions.fromString("rw-------"));
+        } catch (UnsupportedOperationException ignored) {
+            // 非 POSIX 文件系统
+        }
+        LOGGER.info("已生成伴随模组服务器密钥 {}。", secretFile);
+        return new CompanionAuthenticator(secret);
+    }
+
+    // 为玩家的新一次登录生成挑战；该玩家之前未使用的许可随之作废
+    public byte[] newChallenge(UUID playerUuid) {
+        approvals.remove(playerUuid);
+        byte[] nonce = new byte[NONCE_LENGTH];
+        random.nextBytes(nonce);
+        return nonce;
+    }
+
+    // 由服务器密钥与玩家当前凭据派生伴随密钥
+    public byte[] deriveKey(UUID playerUuid, Credential credential) {
+        ByteBuffer message = ByteBuffer.allocate(KEY_CONTEXT.length + 16 + 1 + 4 + credential.salt().length + credential.hash().length);
+        message.put(KEY_CONTEXT)
+                .putLong(playerUuid.getMostSignificantBits())
+                .putLong(playerUuid.getLeastSignificantBits())
+                .put(credential.algorithm())
+                .putInt(credential.iterations())
+                .put(credential.salt())
+                .put(credential.hash());
+        return hmac(serverSecret, message.array());
+    }
+
+    // 客户端与服务器共用：用伴随密钥对挑战作答
+    public static byte[] answer(byte[] key, UUID playerUuid, byte[] nonce) {
+        ByteBuffer message = ByteBuffer.allocate(LOGIN_CONTEXT.length + 16 + nonce.length);
+        message.put(LOGIN_CONTEXT)
+                .putLong(playerUuid.getMostSignificantBits())
+                .putLong(playerUuid.getLeastSignificantBits())
+                .put(nonce);
+        return hmac(key, message.array());
+    }
+
+    // 校验应答，通过时为作答的连接登记一次性的加入许可
+    public boolean verify(UUID playerUuid, Credential credential, byte[] nonce, byte[] response, Object connection) {
+        byte[] expected = answer(deriveKey(playerUuid, credential), playerUuid, nonce);
+        if (!MessageDigest.isEqual(expected, response)) {
+            rejected.increment();
+            return false;
+        }
+        accepted.increment();
+        approvals.put(playerUuid, new Approval(connection, System.nanoTime() + APPROVAL_TTL_NANOS));
+        return true;
+    }
+
+    // 玩家加入时取走许可，只有完成握手的同一连接才能使用；每次握手只能跳过一次认证
+    public boolean consumeApproval(UUID playerUuid, Object connection) {
+        Approval approval = approvals.remove(playerUuid);
+        return approval != null && approval.connection() == connection && approval.expiresAt() - System.nanoTime() > 0;
+    }
+
+    // 完成握手的连接在进入游戏前断开时作废其许可
+    public void discardApproval(UUID playerUuid, Object connection) {
+        approvals.computeIfPresent(playerUuid, (uuid, approval) -> approval.connection() == connection ? null : approval);
+    }
+
+    // 客户端不支持握手时记录，并作废该玩家的许可
+    public void recordUnsupported(UUID playerUuid) {
+        approvals.remove(playerUuid);
+        unsupported.increment();
+    }
+
+    public void clear() {
+        approvals.clear();
+    }
+
+    public long getAcceptedCount() {
+        return accepted.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    public long getUnsupportedCount() {
+        return unsupported.sum();
+    }
+
+    private static byte[] hmac(byte[] key, byte[] message) {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(new SecretKeySpec(key, HMAC_ALGORITHM));
+            return mac.doFinal(message);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC-SHA256 不可用", e);
+        }
+    }
+}
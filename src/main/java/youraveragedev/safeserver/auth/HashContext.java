@@ -0,0 +1,105 @@
+package youraveragedev.safeserver.auth;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * 每个线程复用的哈希上下文：一个 SHA-256 摘要实例和固定大小的工作缓冲区。
+ * PBKDF2-HMAC-SHA256 直接基于该摘要实现，整个计算过程不分配任何对象，
+ * 结果写入 {@link #result}，调用方在同一线程内读取或复制。
+ */
+final class HashContext {
+    static final int DIGEST_LENGTH = 32;
+    private static final int BLOCK_LENGTH = 64;
+    private static final byte INNER_PAD = 0x36;
+    private static final byte OUTER_PAD = 0x5c;
+
+    private static final ThreadLocal<HashContext> CONTEXT = ThreadLocal.withInitial(HashContext::new);
+
+    private final MessageDigest digest;
+    private final byte[] innerKey = new byte[BLOCK_LENGTH];
+    private final byte[] outerKey = new byte[BLOCK_LENGTH];
+    private final byte[] block = new byte[DIGEST_LENGTH];
+    private final byte[] inner = new byte[DIGEST_LENGTH];
+    private final byte[] blockIndex = {0, 0, 0, 1};
+
+    // 最近一次计算的结果
+    final byte[] result = new byte[DIGEST_LENGTH];
+
+    private HashContext() {
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("初始化 SHA-256 哈希失败", e);
+        }
+    }
+
+    static HashContext get() {
+        return CONTEXT.get();
+    }
+
+    // 单轮 SHA-256，结果写入 result
+    void sha256(byte[] input) {
+        digest.update(input);
+        finish(result);
+    }
+
+    // PBKDF2-HMAC-SHA256，输出一个 32 字节块，结果写入 result
+    void pbkdf2(byte[] password, byte[] salt, int iterations) {
+        prepareKey(password);
+
+        // U1 = HMAC(P, salt || INT(1))
+        digest.update(innerKey);
+        digest.update(salt);
+        digest.update(blockIndex);
+        finish(inner);
+        digest.update(outerKey);
+        digest.update(inner);
+        finish(block);
+        System.arraycopy(block, 0, result, 0, DIGEST_LENGTH);
+
+        // Ui = HMAC(P, Ui-1)，T = U1 ^ U2 ^ ... ^ Uc
+        for (int i = 1; i < iterations; i++) {
+            digest.update(innerKey);
+            digest.update(block);
+            finish(inner);
+            digest.update(outerKey);
+            digest.update(inner);
+            finish(block);
+            for (int j = 0; j < DIGEST_LENGTH; j++) {
+                result[j] ^= block[j];
+            }
+        }
+    }
+
+    // 恒定时间比较 result 与期望值
+    boolean resultEquals(byte[] expected) {
+        return MessageDigest.isEqual(result, expected);
+    }
+
+    // 计算 HMAC 的内外填充密钥，超过块长度的密钥先做一次 SHA-256
+    private void prepareKey(byte[] password) {
+        int keyLength = password.length;
+        byte[] key = password;
+        if (keyLength > BLOCK_LENGTH) {
+            digest.update(password);
+            finish(inner);
+            key = inner;
+            keyLength = DIGEST_LENGTH;
+        }
+        for (int i = 0; i < BLOCK_LENGTH; i++) {
+            byte k = i < keyLength ? key[i] : 0;
+            innerKey[i] = (byte) (k ^ INNER_PAD);
+            outerKey[i] = (byte) (k ^ OUTER_PAD);
+        }
+    }
+
+    private void finish(byte[] out) {
+        try {
+            digest.digest(out, 0, DIGEST_LENGTH);
+        } catch (DigestException e) {
+            throw new IllegalStateException("SHA-256 输出缓冲区无效", e);
+        }
+    }
+}
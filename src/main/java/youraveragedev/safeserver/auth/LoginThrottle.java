@@ -0,0 +1,274 @@
+package youraveragedev.safeserver.auth;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 登录限流。
+ * 按 UUID 和 IP 各维护一组令牌桶，每次需要哈希的认证请求先取令牌；校验失败后按指数退避封禁一段时间。
+ * 拒绝发生在提交哈希任务之前。
+ *
+ * 状态保存在固定大小的分片数组中，每个槽位以 CAS 更新，不加锁。
+ * 键按哈希直接映射到槽位：空闲已久的槽位可被新键接管，仍在使用的槽位与冲突的键共享令牌桶，
+ * 因此无论有多少不同的攻击来源，内存占用都不变，冲突只会让限流更严格而不会被绕过。
+ * 失败退避只记在槽位当前的所有者上，冲突的键不会因为别人的失败被封禁。
+ */
+public class LoginThrottle {
+
+    public enum Verdict {
+        ALLOWED,
+        // 令牌已用完
+        RATE_LIMITED,
+        // 处于失败后的退避期
+        BACKOFF
+    }
+
+    // 令牌以千分之一为单位存储，便于整数计算缓慢回填
+    private static final long MILLI_TOKENS = 1000;
+    private static final int TOKEN_BITS = 20;
+    private static final long TOKEN_MASK = (1L << TOKEN_BITS) - 1;
+    private static final int FAILURE_BITS = 8;
+    private static final long FAILURE_MASK = (1L << FAILURE_BITS) - 1;
+    private static final int MAX_BURST = (int) (TOKEN_MASK / MILLI_TOKENS);
+    private static final int SHARDS = 16;
+
+    private final BucketTable uuidBuckets;
+    private final BucketTable ipBuckets;
+    private final long backoffBaseMillis;
+    private final long backoffMaxMillis;
+    private final long startNanos = System.nanoTime();
+
+    private final LongAdder rateLimitedRejections = new LongAdder();
+    private final LongAdder backoffRejections = new LongAdder();
+    private final LongAdder recordedFailures = new LongAdder();
+
+    public LoginThrottle(int slots, int uuidBurst, int uuidPerMinute, int ipBurst, int ipPerMinute, long backoffBaseMillis, long backoffMaxMillis) {
+        this.backoffBaseMillis = Math.max(1, backoffBaseMillis);
+        this.backoffMaxMillis = Math.max(this.backoffBaseMillis, backoffMaxMillis);
+        int slotsPerShard = Integer.highestOneBit(Math.max(SHARDS, slots) / SHARDS);
+        this.uuidBuckets = new BucketTable(slotsPerShard, uuidBurst, uuidPerMinute, this.backoffMaxMillis);
+        this.ipBuckets = new BucketTable(slotsPerShard, ipBurst, ipPerMinute, this.backoffMaxMillis);
+    }
+
+    // 在提交哈希任务前调用；address 为 null 时只检查 UUID
+    public Verdict tryAcquire(UUID playerUuid, String address) {
+        long now = nowMillis();
+        long uuidKey = uuidKey(playerUuid);
+        long ipKey = address != null ? addressKey(address) : 0;
+
+        if (uuidBuckets.isBlocked(uuidKey, now) || (ipKey != 0 && ipBuckets.isBlocked(ipKey, now))) {
+            backoffRejections.increment();
+            return Verdict.BACKOFF;
+        }
+        if (ipKey != 0 && !ipBuckets.tryTake(ipKey, now)) {
+            rateLimitedRejections.increment();
+            return Verdict.RATE_LIMITED;
+        }
+        if (!uuidBuckets.tryTake(uuidKey, now)) {
+            // 请求未被受理，退还已取的 IP 令牌，同一 IP 下的其他玩家不受影响
+            if (ipKey != 0) {
+                ipBuckets.refund(ipKey);
+            }
+            rateLimitedRejections.increment();
+            return Verdict.RATE_LIMITED;
+        }
+        return Verdict.ALLOWED;
+    }
+
+    // 密码校验失败：退避时长随连续失败次数翻倍
+    public void recordFailure(UUID playerUuid, String address) {
+        long now = nowMillis();
+        recordedFailures.increment();
+        uuidBuckets.recordFailure(uuidKey(playerUuid), now, backoffBaseMillis, backoffMaxMillis);
+        if (address != null) {
+            ipBuckets.recordFailure(addressKey(address), now, backoffBaseMillis, backoffMaxMillis);
+        }
+    }
+
+    // 密码校验成功：清除该玩家的失败记录（IP 的记录按时间自然衰减）
+    public void recordSuccess(UUID playerUuid) {
+        uuidBuckets.clearFailures(uuidKey(playerUuid));
+    }
+
+    public long getRateLimitedRejections() {
+        return rateLimitedRejections.sum();
+    }
+
+    public long getBackoffRejections() {
+        return backoffRejections.sum();
+    }
+
+    public long getRecordedFailures() {
+        return recordedFailures.sum();
+    }
+
+    private long nowMillis() {
+        return (System.nanoTime() - startNanos) / 1_000_000L;
+    }
+
+    private static long uuidKey(UUID uuid) {
+        return nonZero(spread(uuid.getMostSignificantBits() * 0x9E3779B97F4A7C15L ^ uuid.getLeastSignificantBits()));
+    }
+
+    private static long addressKey(String address) {
+        // FNV-1a
+        long hash = 0xCBF29CE484222325L;
+        for (byte b : address.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001B3L;
+        }
+        return nonZero(spread(hash));
+    }
+
+    private static long spread(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
+    }
+
+    // 0 表示空槽位
+    private static long nonZero(long key) {
+        return key != 0 ? key : 1;
+    }
+
+    /**
+     * 每个槽位占 4 个 long：键、令牌桶、失败记录、填充。
+     * 令牌桶 = 上次回填时间（毫秒）<< 20 | 剩余千分令牌；失败记录 = 封禁截止时间（毫秒）<< 8 | 连续失败次数。
+     */
+    private static final class BucketTable {
+        private static final int STRIDE = 4;
+        private static final int KEY = 0;
+        private static final int BUCKET = 1;
+        private static final int PENALTY = 2;
+
+        private final AtomicLongArray[] shards = new AtomicLongArray[SHARDS];
+        private final int slotMask;
+        private final long capacity;
+        private final long perMinute;
+        // 超过此时长无活动的槽位可被其他键接管
+        private final long idleMillis;
+
+        BucketTable(int slotsPerShard, int burst, int perMinute, long backoffMaxMillis) {
+            for (int i = 0; i < SHARDS; i++) {
+                shards[i] = new AtomicLongArray(slotsPerShard * STRIDE);
+            }
+            this.slotMask = slotsPerShard - 1;
+            this.capacity = Math.max(1, Math.min(burst, MAX_BURST)) * MILLI_TOKENS;
+            this.perMinute = Math.max(1, perMinute);
+            long refillMillis = capacity * 60_000L / (this.perMinute * MILLI_TOKENS);
+            this.idleMillis = Math.max(refillMillis, backoffMaxMillis);
+        }
+
+        private AtomicLongArray shard(long key) {
+            return shards[(int) (key >>> 60) & (SHARDS - 1)];
+        }
+
+        private int base(long key) {
+            return ((int) key & slotMask) * STRIDE;
+        }
+
+        // 定位键所在槽位，必要时接管空闲槽位
+        private void claim(AtomicLongArray slots, int base, long key, long now) {
+            long current = slots.get(base + KEY);
+            if (current == key) {
+                return;
+            }
+            if (current != 0 && !isIdle(slots, base, now)) {
+                // 槽位仍在使用，冲突的键共享其状态
+                return;
+            }
+            if (slots.compareAndSet(base + KEY, current, key)) {
+                slots.set(base + BUCKET, (now << TOKEN_BITS) | capacity);
+                slots.set(base + PENALTY, 0);
+            }
+        }
+
+        private boolean isIdle(AtomicLongArray slots, int base, long now) {
+            long lastRefill = slots.get(base + BUCKET) >>> TOKEN_BITS;
+            long blockedUntil = slots.get(base + PENALTY) >>> FAILURE_BITS;
+            return now - Math.max(lastRefill, blockedUntil) > idleMillis;
+        }
+
+        boolean isBlocked(long key, long now) {
+            AtomicLongArray slots = shard(key);
+            int base = base(key);
+            if (slots.get(base + KEY) != key) {
+                return false;
+            }
+            return (slots.get(base + PENALTY) >>> FAILURE_BITS) > now;
+        }
+
+        boolean tryTake(long key, long now) {
+            AtomicLongArray slots = shard(key);
+            int base = base(key);
+            claim(slots, base, key, now);
+            while (true) {
+                long old = slots.get(base + BUCKET);
+                long last = old >>> TOKEN_BITS;
+                long elapsed = Math.min(Math.max(0, now - last), idleMillis);
+                long tokens = Math.min(capacity, (old & TOKEN_MASK) + elapsed * perMinute * MILLI_TOKENS / 60_000L);
+                if (tokens < MILLI_TOKENS) {
+                    return false;
+                }
+                long next = (Math.max(now, last) << TOKEN_BITS) | (tokens - MILLI_TOKENS);
+                if (slots.compareAndSet(base + BUCKET, old, next)) {
+                    return true;
+                }
+            }
+        }
+
+        // 退还 tryTake 取走的一个令牌（不超过桶容量）
+        void refund(long key) {
+            AtomicLongArray slots = shard(key);
+            int base = base(key);
+            while (true) {
+                long old = slots.get(base + BUCKET);
+                long tokens = Math.min(capacity, (old & TOKEN_MASK) + MILLI_TOKENS);
+                long next = (old & ~TOKEN_MASK) | tokens;
+                if (slots.compareAndSet(base + BUCKET, old, next)) {
+                    return;
+                }
+            }
+        }
+
+        void recordFailure(long key, long now, long baseMillis, long maxMillis) {
+            AtomicLongArray slots = shard(key);
+            int base = base(key);
+            claim(slots, base, key, now);
+            if (slots.get(base + KEY) != key) {
+                // 槽位属于仍在使用的其他键
+                return;
+            }
+            while (true) {
+                long old = slots.get(base + PENALTY);
+                long blockedUntil = old >>> FAILURE_BITS;
+                long failures = old & FAILURE_MASK;
+                // 上次封禁结束后长时间无失败则重新计数
+                if (now - blockedUntil > maxMillis) {
+                    failures = 0;
+                }
+                failures = Math.min(failures + 1, FAILURE_MASK);
+                long delay = failures > 20 ? maxMillis : Math.min(maxMillis, baseMillis << (failures - 1));
+                if (delay <= 0) {
+                    delay = maxMillis;
+                }
+                long next = (Math.max(blockedUntil, now + delay) << FAILURE_BITS) | failures;
+                if (slots.compareAndSet(base + PENALTY, old, next)) {
+                    return;
+                }
+            }
+        }
+
+        void clearFailures(long key) {
+            AtomicLongArray slots = shard(key);
+            int base = base(key);
+            if (slots.get(base + KEY) == key) {
+                slots.set(base + PENALTY, 0);
+            }
+        }
+    }
+}
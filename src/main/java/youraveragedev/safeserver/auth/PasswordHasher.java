@@ -0,0 +1,18 @@
+package youraveragedev.safeserver.auth;
+
+import youraveragedev.safeserver.storage.Credential;
+
+/**
+ * 单一哈希算法的实现。凭据中记录算法标识与参数，
+ * 校验时按凭据的算法找到对应实现，用相同参数重新计算后以恒定时间比较。
+ */
+public interface PasswordHasher {
+
+    byte algorithm();
+
+    // 以新参数（新盐、当前成本）为密码生成凭据
+    Credential create(String password);
+
+    // 使用已有凭据的参数校验密码；除密码的 UTF-8 字节外不应分配内存
+    boolean verify(String password, Credential stored);
+}
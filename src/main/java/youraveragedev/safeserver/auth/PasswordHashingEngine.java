@@ -0,0 +1,77 @@
+package youraveragedev.safeserver.auth;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import youraveragedev.safeserver.storage.Credential;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 可插拔的密码哈希引擎。
+ * 新凭据一律使用 PBKDF2，迭代次数在启动时根据本机实测速度按每次登录的 CPU 预算计算；
+ * 校验时按凭据记录的算法与参数分派，旧版 SHA-256 或低于当前成本的凭据在下次成功登录时透明升级。
+ */
+public class PasswordHashingEngine {
+    private static final Logger LOGGER = LoggerFactory.getLogger("safeserver-hashing");
+
+    // 校准时用于测速的迭代次数与轮数
+    private static final int CALIBRATION_ITERATIONS = 20_000;
+    private static final int CALIBRATION_ROUNDS = 5;
+    private static final int MAX_ITERATIONS = 10_000_000;
+
+    private final Sha256PasswordHasher legacyHasher = new Sha256PasswordHasher();
+    private final Pbkdf2PasswordHasher currentHasher;
+
+    public PasswordHashingEngine(int iterations) {
+        this.currentHasher = new Pbkdf2PasswordHasher(iterations);
+    }
+
+    // 实测本机 PBKDF2 速度，选出能落在 budgetMillis 之内的迭代次数（不低于 minIterations）
+    public static PasswordHashingEngine calibrate(long budgetMillis, int minIterations) {
+        byte[] salt = new byte[Credential.MAX_SALT_LENGTH];
+        long best = Long.MAX_VALUE;
+        // 第一轮用于预热，不计入结果
+        for (int round = 0; round <= CALIBRATION_ROUNDS; round++) {
+            long start = System.nanoTime();
+            Pbkdf2PasswordHasher.derive(HashContext.get(), "safeserver-calibration", salt, CALIBRATION_ITERATIONS);
+            long elapsed = System.nanoTime() - start;
+            if (round > 0) {
+                best = Math.min(best, elapsed);
+            }
+        }
+        double nanosPerIteration = (double) best / CALIBRATION_ITERATIONS;
+        long fitted = (long) (TimeUnit.MILLISECONDS.toNanos(budgetMillis) / nanosPerIteration);
+        int iterations = (int) Math.max(minIterations, Math.min(MAX_ITERATIONS, fitted));
+        LOGGER.info("PBKDF2 校准完成：每次迭代约 {} 纳秒，在 {} 毫秒预算内使用 {} 次迭代。",
+                String.format("%.1f", nanosPerIteration), budgetMillis, iterations);
+        return new PasswordHashingEngine(iterations);
+    }
+
+    public int getIterations() {
+        return currentHasher.getIterations();
+    }
+
+    // 使用当前算法与成本为密码生成新凭据
+    public Credential hash(String password) {
+        return currentHasher.create(password);
+    }
+
+    public boolean verify(Credential stored, String password) {
+        return hasherFor(stored.algorithm()).verify(password, stored);
+    }
+
+    // 旧算法或成本低于当前设定的凭据需要在登录成功后重新哈希
+    public boolean needsRehash(Credential stored) {
+        return stored.algorithm() != currentHasher.algorithm() || stored.iterations() < currentHasher.getIterations();
+    }
+
+    private PasswordHasher hasherFor(byte algorithm) {
+        if (algorithm == currentHasher.algorithm()) {
+            return currentHasher;
+        }
+        if (algorithm == legacyHasher.algorithm()) {
+            return legacyHasher;
+        }
+        throw new IllegalArgumentException("不支持的哈希算法：" + algorithm);
+    }
+}
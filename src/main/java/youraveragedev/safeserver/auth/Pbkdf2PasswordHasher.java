@@ -0,0 +1,53 @@
+package youraveragedev.safeserver.auth;
+
+import youraveragedev.safeserver.storage.Credential;
+
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/**
+ * PBKDF2-HMAC-SHA256，加盐并按配置的迭代次数计算。
+ * 基于每线程复用的 {@link HashContext} 实现，输出与 JDK 的 PBKDF2WithHmacSHA256 一致。
+ */
+public class Pbkdf2PasswordHasher implements PasswordHasher {
+    private static final int SALT_LENGTH = Credential.MAX_SALT_LENGTH;
+
+    private final SecureRandom random = new SecureRandom();
+    private final int iterations;
+
+    public Pbkdf2PasswordHasher(int iterations) {
+        this.iterations = iterations;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    @Override
+    public byte algorithm() {
+        return Credential.ALGORITHM_PBKDF2_SHA256;
+    }
+
+    @Override
+    public Credential create(String password) {
+        byte[] salt = new byte[SALT_LENGTH];
+        random.nextBytes(salt);
+        HashContext context = HashContext.get();
+        derive(context, password, salt, iterations);
+        return Credential.pbkdf2Sha256(iterations, salt, context.result.clone());
+    }
+
+    @Override
+    public boolean verify(String password, Credential stored) {
+        HashContext context = HashContext.get();
+        derive(context, password, stored.salt(), stored.iterations());
+        return context.resultEquals(stored.hash());
+    }
+
+    static void derive(HashContext context, String password, byte[] salt, int iterations) {
+        byte[] passwordBytes = password.getBytes(StandardCharsets.UTF_8);
+        context.pbkdf2(passwordBytes, salt, iterations);
+        Arrays.fill(passwordBytes, (byte) 0);
+    }
+}
@@ -0,0 +1,84 @@
+package youraveragedev.safeserver.auth;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 快速重连票据缓存。
+ * 已认证的玩家断开时按 UUID 记录其连接地址，在有效期内从同一地址重新加入可直接跳过认证。
+ * 票据只能使用一次，超过容量时淘汰最早签发的票据。仅在服务器线程上访问。
+ */
+public class SessionTicketCache {
+
+    private record Ticket(String address, long expiresAtNanos) {}
+
+    private final long ttlNanos;
+    private final int maxEntries;
+    private final LinkedHashMap<UUID, Ticket> tickets;
+
+    private long resumed;
+    private long expired;
+
+    public SessionTicketCache(long ttlSeconds, int maxEntries) {
+        this.ttlNanos = Math.max(0, ttlSeconds) * 1_000_000_000L;
+        this.maxEntries = Math.max(0, maxEntries);
+        this.tickets = new LinkedHashMap<>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, Ticket> eldest) {
+                return size() > SessionTicketCache.this.maxEntries;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return ttlNanos > 0 && maxEntries > 0;
+    }
+
+    // 已认证玩家断开时签发票据
+    public void issue(UUID playerUuid, String address) {
+        if (!isEnabled() || address == null) {
+            return;
+        }
+        // 先移除再插入，使重新签发的票据排到淘汰顺序末尾
+        tickets.remove(playerUuid);
+        tickets.put(playerUuid, new Ticket(address, System.nanoTime() + ttlNanos));
+    }
+
+    // 玩家加入时使用票据；地址一致且未过期时返回 true，无论结果如何票据都会被移除
+    public boolean consume(UUID playerUuid, String address) {
+        Ticket ticket = tickets.remove(playerUuid);
+        if (ticket == null) {
+            return false;
+        }
+        if (System.nanoTime() - ticket.expiresAtNanos() > 0) {
+            expired++;
+            return false;
+        }
+        if (!ticket.address().equals(address)) {
+            return false;
+        }
+        resumed++;
+        return true;
+    }
+
+    public void invalidate(UUID playerUuid) {
+        tickets.remove(playerUuid);
+    }
+
+    public void clear() {
+        tickets.clear();
+    }
+
+    public int size() {
+        return tickets.size();
+    }
+
+    public long getResumedCount() {
+        return resumed;
+    }
+
+    public long getExpiredCount() {
+        return expired;
+    }
+}
@@ -0,0 +1,37 @@
+package youraveragedev.safeserver.auth;
+
+import youraveragedev.safeserver.storage.Credential;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 旧版无盐单轮 SHA-256，仅用于校验历史凭据，校验通过后会被升级为当前算法。
+ */
+public class Sha256PasswordHasher implements PasswordHasher {
+
+    @Override
+    public byte algorithm() {
+        return Credential.ALGORITHM_SHA256;
+    }
+
+    @Override
+    public Credential create(String password) {
+        HashContext context = HashContext.get();
+        digest(context, password);
+        return Credential.sha256(context.result.clone());
+    }
+
+    @Override
+    public boolean verify(String password, Credential stored) {
+        HashContext context = HashContext.get();
+        digest(context, password);
+        return context.resultEquals(stored.hash());
+    }
+
+    private static void digest(HashContext context, String password) {
+        byte[] passwordBytes = password.getBytes(StandardCharsets.UTF_8);
+        context.sha256(passwordBytes);
+        Arrays.fill(passwordBytes, (byte) 0);
+    }
+}
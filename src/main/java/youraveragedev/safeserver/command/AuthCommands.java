@@ -1,20 +1,32 @@
 package youraveragedev.safeserver.command;
 
 import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.ParseResults;
 import com.mojang.brigadier.arguments.StringArgumentType;
+import com.mojang.brigadier.tree.CommandNode;
 import net.minecraft.server.command.ServerCommandSource;
 import net.minecraft.command.argument.EntityArgumentType;
 import net.minecraft.server.command.CommandManager;
 import net.minecraft.server.network.ServerPlayerEntity;
 import net.minecraft.text.Text;
+import youraveragedev.safeserver.AuthService;
 import youraveragedev.safeserver.Safeserver;
 import youraveragedev.safeserver.SafeserverConstants;
+import youraveragedev.safeserver.auth.AuthPipeline;
+import youraveragedev.safeserver.gate.AuthGate;
+import youraveragedev.safeserver.metrics.SafeserverMetrics;
+import youraveragedev.safeserver.mixin.CommandNodeAccessor;
 
+import java.util.Set;
 import java.util.UUID;
+import java.util.function.Predicate;
 
 public class AuthCommands {
 
-    public static void registerCommands(CommandDispatcher<ServerCommandSource> dispatcher, Safeserver modInstance) {
+    // 认证前可以看到和使用的根命令
+    private static final Set<String> UNAUTHENTICATED_COMMANDS = Set.of("login", "setpassword");
+
+    public static void registerCommands(CommandDispatcher<ServerCommandSource> dispatcher, AuthService authService) {
         dispatcher.register(CommandManager.literal("setpassword")
                 .requires(source -> source.getEntity() instanceof ServerPlayerEntity)
                 .then(CommandManager.argument("password", StringArgumentType.string())
@@ -23,17 +35,52 @@ public class AuthCommands {
                                         context.getSource(),
                                         StringArgumentType.getString(context, "password"),
                                         StringArgumentType.getString(context, "confirmPassword"),
-                                        modInstance)))));
+                                        authService)))));
 
         dispatcher.register(CommandManager.literal("login")
                 .requires(source -> source.getEntity() instanceof ServerPlayerEntity)
                 .then(CommandManager.argument("password", StringArgumentType.greedyString())
-                        .executes(context -> runLoginCommand(context.getSource(), StringArgumentType.getString(context, "password"), modInstance))));
+                        .executes(context -> runLoginCommand(context.getSource(), StringArgumentType.getString(context, "password"), authService))));
 
-        registerNewCommands(dispatcher, modInstance);
+        registerNewCommands(dispatcher, authService);
     }
 
-    private static int runSetPasswordCommand(ServerCommandSource source, String password, String confirmPassword, Safeserver modInstance) {
+    // 认证中的玩家只能使用 /login 与 /setpassword：其余根命令在 requires 中直接拒绝，
+    // 发送给客户端的命令树也只包含这两个命令，没有可供补全的其他命令。
+    // requires 在每次发送命令树和补全时对每个根命令求值，因此不在其中计数，被拒绝的执行由 recordExecution 统计
+    @SuppressWarnings("unchecked")
+    public static void restrictRootCommands(CommandDispatcher<ServerCommandSource> dispatcher) {
+        int restricted = 0;
+        for (CommandNode<ServerCommandSource> node : dispatcher.getRoot().getChildren()) {
+            if (UNAUTHENTICATED_COMMANDS.contains(node.getName())) {
+                continue;
+            }
+            Predicate<ServerCommandSource> requirement = node.getRequirement();
+            ((CommandNodeAccessor<ServerCommandSource>) node).safeserver$setRequirement(
+                    source -> !AuthGate.isGated(source.getEntity()) && requirement.test(source));
+            restricted++;
+        }
+        Safeserver.LOGGER.debug("已为 {} 个根命令添加认证条件。", restricted);
+    }
+
+    // 玩家执行命令时计数，认证中的玩家执行 /login 与 /setpassword 以外的命令计为拦截
+    public static void recordExecution(ParseResults<ServerCommandSource> parseResults) {
+        ServerCommandSource source = parseResults.getContext().getSource();
+        if (!(source.getEntity() instanceof ServerPlayerEntity player)) {
+            return;
+        }
+        boolean blocked = false;
+        if (AuthGate.isGated(player)) {
+            String command = parseResults.getReader().getString();
+            int start = command.startsWith("/") ? 1 : 0;
+            int end = command.indexOf(' ', start);
+            String root = command.substring(start, end < 0 ? command.length() : end);
+            blocked = !UNAUTHENTICATED_COMMANDS.contains(root);
+        }
+        SafeserverMetrics.recordGate(SafeserverMetrics.GateCallback.COMMAND, blocked);
+    }
+
+    private static int runSetPasswordCommand(ServerCommandSource source, String password, String confirmPassword, AuthService authService) {
         ServerPlayerEntity player = source.getPlayer();
         if (player == null) {
             source.sendError(Text.literal(SafeserverConstants.PLAYER_ONLY_COMMAND_ERROR));
@@ -55,33 +102,33 @@ public class AuthCommands {
             return 0;
         }
 
-        boolean isAuthenticating = modInstance.isPlayerAuthenticating(playerUuid);
-        boolean hasPassword = modInstance.hasPassword(playerUuid);
+        boolean isAuthenticating = authService.isPlayerAuthenticating(playerUuid);
+        boolean hasPassword = authService.hasPassword(playerUuid);
 
         if (isAuthenticating && !hasPassword) {
             // 首次设置密码
-            boolean success = modInstance.registerPlayer(playerUuid, password);
-            if (success) {
-                source.sendFeedback(() -> Text.literal(SafeserverConstants.PASSWORD_SET_SUCCESS), false);
-                Safeserver.LOGGER.info("玩家 {} 设置了密码并完成认证。", playerName);
-                return 1;
-            } else {
-                source.sendError(Text.literal("设置密码失败。" + SafeserverConstants.CONTACT_ADMIN_ERROR));
-                Safeserver.LOGGER.error("为玩家 {} 设置密码失败。", playerName);
-                return 0;
-            }
+            AuthPipeline.Status status = authService.registerPlayer(playerUuid, password, source.getServer(), success -> {
+                if (success) {
+                    source.sendFeedback(() -> Text.literal(SafeserverConstants.PASSWORD_SET_SUCCESS), false);
+                    Safeserver.LOGGER.info("玩家 {} 设置了密码并完成认证。", playerName);
+                } else {
+                    source.sendError(Text.literal("设置密码失败。" + SafeserverConstants.CONTACT_ADMIN_ERROR));
+                    Safeserver.LOGGER.error("为玩家 {} 设置密码失败。", playerName);
+                }
+            });
+            return reportSubmission(source, status);
         } else if (!isAuthenticating && hasPassword) {
             // 已认证用户重置密码
-            boolean success = modInstance.resetAndSetPassword(playerUuid, password);
-            if (success) {
-                source.sendFeedback(() -> Text.literal(SafeserverConstants.PASSWORD_RESET_SUCCESS), false);
-                Safeserver.LOGGER.info("玩家 {} 重置了密码。", playerName);
-                return 1;
-            } else {
-                source.sendError(Text.literal("重置密码失败。" + SafeserverConstants.CONTACT_ADMIN_ERROR));
-                Safeserver.LOGGER.error("为玩家 {} 重置密码失败。", playerName);
-                return 0;
-            }
+            AuthPipeline.Status status = authService.resetAndSetPassword(playerUuid, password, source.getServer(), success -> {
+                if (success) {
+                    source.sendFeedback(() -> Text.literal(SafeserverConstants.PASSWORD_RESET_SUCCESS), false);
+                    Safeserver.LOGGER.info("玩家 {} 重置了密码。", playerName);
+                } else {
+                    source.sendError(Text.literal("重置密码失败。" + SafeserverConstants.CONTACT_ADMIN_ERROR));
+                    Safeserver.LOGGER.error("为玩家 {} 重置密码失败。", playerName);
+                }
+            });
+            return reportSubmission(source, status);
         } else if (isAuthenticating && hasPassword) {
             // 正在认证但已有密码，应使用登录
             source.sendError(Text.literal(SafeserverConstants.ALREADY_HAS_PASSWORD_ERROR));
@@ -93,7 +140,7 @@ public class AuthCommands {
         }
     }
 
-    private static int runLoginCommand(ServerCommandSource source, String password, Safeserver modInstance) {
+    private static int runLoginCommand(ServerCommandSource source, String password, AuthService authService) {
         ServerPlayerEntity player = source.getPlayer();
         if (player == null) {
             source.sendError(Text.literal(SafeserverConstants.PLAYER_ONLY_COMMAND_ERROR));
@@ -103,29 +150,29 @@ public class AuthCommands {
         UUID playerUuid = player.getUuid();
         String playerName = player.getName().getString();
 
-        if (!modInstance.isPlayerAuthenticating(playerUuid)) {
+        if (!authService.isPlayerAuthenticating(playerUuid)) {
             source.sendError(Text.literal(SafeserverConstants.ALREADY_AUTHENTICATED_ERROR));
             return 0;
         }
 
-        if (!modInstance.hasPassword(playerUuid)) {
+        if (!authService.hasPassword(playerUuid)) {
             source.sendError(Text.literal(SafeserverConstants.NO_PASSWORD_SET_ERROR));
             return 0;
         }
 
-        boolean success = modInstance.authenticatePlayer(playerUuid, password);
-        if (success) {
-            source.sendFeedback(() -> Text.literal(SafeserverConstants.LOGIN_SUCCESS), false);
-            Safeserver.LOGGER.info("玩家 {} 成功登录。", playerName);
-            return 1;
-        } else {
-            source.sendError(Text.literal(SafeserverConstants.INCORRECT_PASSWORD_ERROR));
-            Safeserver.LOGGER.warn("玩家 {} 登录失败（密码错误）。", playerName);
-            return 0;
-        }
+        AuthPipeline.Status status = authService.authenticatePlayer(playerUuid, password, source.getServer(), success -> {
+            if (success) {
+                source.sendFeedback(() -> Text.literal(SafeserverConstants.LOGIN_SUCCESS), false);
+                Safeserver.LOGGER.info("玩家 {} 成功登录。", playerName);
+            } else {
+                source.sendError(Text.literal(SafeserverConstants.INCORRECT_PASSWORD_ERROR));
+                Safeserver.LOGGER.warn("玩家 {} 登录失败（密码错误）。", playerName);
+            }
+        });
+        return reportSubmission(source, status);
     }
 
-    private static void registerNewCommands(CommandDispatcher<ServerCommandSource> dispatcher, Safeserver modInstance) {
+    private static void registerNewCommands(CommandDispatcher<ServerCommandSource> dispatcher, AuthService authService) {
         // 玩家修改自己的密码
         dispatcher.register(CommandManager.literal("changepassword")
                 .requires(source -> source.getEntity() instanceof ServerPlayerEntity)
@@ -137,7 +184,7 @@ public class AuthCommands {
                                                 StringArgumentType.getString(context, "oldPassword"),
                                                 StringArgumentType.getString(context, "newPassword"),
                                                 StringArgumentType.getString(context, "confirmNewPassword"),
-                                                modInstance))))));
+                                                authService))))));
 
         // OP 重置他人密码
         dispatcher.register(CommandManager.literal("resetpassword")
@@ -146,10 +193,24 @@ public class AuthCommands {
                         .executes(context -> runResetPasswordCommand(
                                 context.getSource(),
                                 EntityArgumentType.getPlayer(context, "targetPlayer"),
-                                modInstance))));
+                                authService))));
+
+        // OP 查看认证子系统运行指标
+        dispatcher.register(CommandManager.literal("safeserver")
+                .requires(source -> source.hasPermissionLevel(2))
+                .then(CommandManager.literal("stats")
+                        .executes(context -> runStatsCommand(context.getSource()))));
+    }
+
+    private static int runStatsCommand(ServerCommandSource source) {
+        source.sendFeedback(() -> Text.literal("SafeServer 运行指标："), false);
+        for (String line : SafeserverMetrics.summary()) {
+            source.sendFeedback(() -> Text.literal(line), false);
+        }
+        return 1;
     }
 
-    private static int runChangePasswordCommand(ServerCommandSource source, String oldPassword, String newPassword, String confirmNewPassword, Safeserver modInstance) {
+    private static int runChangePasswordCommand(ServerCommandSource source, String oldPassword, String newPassword, String confirmNewPassword, AuthService authService) {
         ServerPlayerEntity player = source.getPlayer();
         if (player == null) {
             source.sendError(Text.literal(SafeserverConstants.PLAYER_ONLY_COMMAND_ERROR));
@@ -158,7 +219,7 @@ public class AuthCommands {
 
         UUID playerUuid = player.getUuid();
 
-        if (modInstance.isPlayerAuthenticating(playerUuid)) {
+        if (authService.isPlayerAuthenticating(playerUuid)) {
             source.sendError(Text.literal(SafeserverConstants.MUST_BE_LOGGED_IN_ERROR));
             return 0;
         }
@@ -173,30 +234,30 @@ public class AuthCommands {
             return 0;
         }
 
-        boolean success = modInstance.changePlayerPassword(playerUuid, oldPassword, newPassword);
-
-        if (success) {
-            source.sendFeedback(() -> Text.literal(SafeserverConstants.PASSWORD_CHANGE_SUCCESS), false);
-            Safeserver.LOGGER.info("玩家 {} 修改了密码。", player.getName().getString());
-            return 1;
-        } else {
-            source.sendError(Text.literal(SafeserverConstants.CHECK_OLD_PASSWORD_ERROR));
-            Safeserver.LOGGER.warn("玩家 {} 修改密码失败（原密码错误）。", player.getName().getString());
-            return 0;
-        }
+        String playerName = player.getName().getString();
+        AuthPipeline.Status status = authService.changePlayerPassword(playerUuid, oldPassword, newPassword, source.getServer(), success -> {
+            if (success) {
+                source.sendFeedback(() -> Text.literal(SafeserverConstants.PASSWORD_CHANGE_SUCCESS), false);
+                Safeserver.LOGGER.info("玩家 {} 修改了密码。", playerName);
+            } else {
+                source.sendError(Text.literal(SafeserverConstants.CHECK_OLD_PASSWORD_ERROR));
+                Safeserver.LOGGER.warn("玩家 {} 修改密码失败（原密码错误）。", playerName);
+            }
+        });
+        return reportSubmission(source, status);
     }
 
-    private static int runResetPasswordCommand(ServerCommandSource source, ServerPlayerEntity targetPlayer, Safeserver modInstance) {
+    private static int runResetPasswordCommand(ServerCommandSource source, ServerPlayerEntity targetPlayer, AuthService authService) {
         UUID targetUuid = targetPlayer.getUuid();
         String targetName = targetPlayer.getName().getString();
         String sourceName = source.getName();
 
-        if (!modInstance.hasPassword(targetUuid)) {
+        if (!authService.hasPassword(targetUuid)) {
             source.sendError(Text.literal("玩家 " + targetName + " 尚未通过此插件设置密码。"));
             return 0;
         }
 
-        boolean success = modInstance.resetPlayerPassword(targetUuid);
+        boolean success = authService.resetPlayerPassword(targetUuid);
 
         if (success) {
             source.sendFeedback(() -> Text.literal("玩家 " + targetName + " 的密码已重置，他们需要重新设置新密码。"), false);
@@ -208,4 +269,21 @@ public class AuthCommands {
             return 0;
         }
     }
+
+    // 将认证流水线的提交结果转换为命令返回值；结果本身稍后在服务器线程回调中反馈
+    private static int reportSubmission(ServerCommandSource source, AuthPipeline.Status status) {
+        switch (status) {
+            case ACCEPTED:
+                return 1;
+            case DUPLICATE:
+                source.sendError(Text.literal(SafeserverConstants.AUTH_IN_PROGRESS_ERROR));
+                return 0;
+            case THROTTLED:
+                source.sendError(Text.literal(SafeserverConstants.AUTH_THROTTLED_ERROR));
+                return 0;
+            default:
+                source.sendError(Text.literal(SafeserverConstants.AUTH_BUSY_ERROR));
+                return 0;
+        }
+    }
 }
@@ -0,0 +1,42 @@
+package youraveragedev.safeserver.gate;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 游戏行为拦截的快速路径。
+ * 没有任何玩家处于认证中时只需读取一个计数器即可放行；否则读取玩家实体上的认证标记，
+ * 两种情况都不需要哈希查表。计数与标记由 PlayerStateManager 在会话创建和移除时维护。
+ */
+public final class AuthGate {
+
+    // 当前认证会话数
+    private static final AtomicInteger activeSessions = new AtomicInteger();
+
+    private AuthGate() {
+        throw new UnsupportedOperationException("此类为工具类，不可实例化。");
+    }
+
+    // 玩家是否仍需认证（player 可以是任意实体，非服务端玩家一律放行）
+    public static boolean isGated(Object player) {
+        return activeSessions.get() != 0 && player instanceof AuthGatedPlayer gated && gated.safeserver$isAuthGated();
+    }
+
+    public static boolean isAnyoneAuthenticating() {
+        return activeSessions.get() != 0;
+    }
+
+    // 会话创建时调用，随后为玩家打上认证标记
+    public static void enter() {
+        activeSessions.incrementAndGet();
+    }
+
+    // 会话移除时调用，在清除玩家的认证标记之后
+    public static void leave() {
+        activeSessions.decrementAndGet();
+    }
+
+    // 服务器停止时清零（单人游戏中同一 JVM 会多次启动服务器）
+    public static void reset() {
+        activeSessions.set(0);
+    }
+}
@@ -0,0 +1,12 @@
+package youraveragedev.safeserver.gate;
+
+/**
+ * 通过 Mixin 附加到 ServerPlayerEntity 上的认证标记。
+ * 拦截检查直接读取实体上的字段，而不必按 UUID 查表。
+ */
+public interface AuthGatedPlayer {
+
+    boolean safeserver$isAuthGated();
+
+    void safeserver$setAuthGated(boolean gated);
+}
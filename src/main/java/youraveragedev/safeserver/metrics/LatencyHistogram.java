@@ -0,0 +1,84 @@
+package youraveragedev.safeserver.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 固定桶的耗时直方图（纳秒），可在任意线程无锁记录。
+ * 桶上界从 minNanos 开始按 2 倍递增，最后一个桶收纳所有更大的值。
+ */
+public class LatencyHistogram {
+    private final String name;
+    private final String help;
+    private final long[] upperBounds;
+    private final AtomicLongArray counts;
+    private final LongAdder sumNanos = new LongAdder();
+    private final LongAdder count = new LongAdder();
+
+    public LatencyHistogram(String name, String help, long minNanos, int buckets) {
+        this.name = name;
+        this.help = help;
+        this.upperBounds = new long[buckets];
+        long bound = minNanos;
+        for (int i = 0; i < buckets; i++) {
+            upperBounds[i] = bound;
+            bound <<= 1;
+        }
+        this.counts = new AtomicLongArray(buckets + 1);
+    }
+
+    public void record(long nanos) {
+        int bucket = 0;
+        while (bucket < upperBounds.length && nanos > upperBounds[bucket]) {
+            bucket++;
+        }
+        counts.incrementAndGet(bucket);
+        sumNanos.add(nanos);
+        count.increment();
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSumNanos() {
+        return sumNanos.sum();
+    }
+
+    // 近似分位数：返回第一个累计占比达到 q 的桶的上界，无数据时返回 0
+    public long percentileNanos(double q) {
+        long total = 0;
+        long[] snapshot = new long[counts.length()];
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(total * q);
+        long cumulative = 0;
+        for (int i = 0; i < upperBounds.length; i++) {
+            cumulative += snapshot[i];
+            if (cumulative >= target) {
+                return upperBounds[i];
+            }
+        }
+        return upperBounds[upperBounds.length - 1] * 2;
+    }
+
+    // 以 Prometheus 文本格式输出，单位为秒
+    void writePrometheus(StringBuilder out) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" histogram\n");
+        long cumulative = 0;
+        for (int i = 0; i < upperBounds.length; i++) {
+            cumulative += counts.get(i);
+            out.append(name).append("_bucket{le=\"").append(upperBounds[i] / 1e9).append("\"} ").append(cumulative).append('\n');
+        }
+        cumulative += counts.get(upperBounds.length);
+        out.append(name).append("_bucket{le=\"+Inf\"} ").append(cumulative).append('\n');
+        out.append(name).append("_sum ").append(sumNanos.sum() / 1e9).append('\n');
+        out.append(name).append("_count ").append(cumulative).append('\n');
+    }
+}
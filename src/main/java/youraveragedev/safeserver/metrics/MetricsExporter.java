@@ -0,0 +1,63 @@
+package youraveragedev.safeserver.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 定期把指标以 Prometheus 文本格式写入文件，供 node_exporter 的 textfile 收集器读取。
+ * 写入在独立的守护线程上进行，先写临时文件再原子替换。
+ */
+public class MetricsExporter {
+    private static final Logger LOGGER = LoggerFactory.getLogger("safeserver-metrics");
+
+    private final Path outputPath;
+    private final long intervalSeconds;
+    private ScheduledExecutorService scheduler;
+
+    public MetricsExporter(Path outputPath, long intervalSeconds) {
+        this.outputPath = outputPath;
+        this.intervalSeconds = intervalSeconds;
+    }
+
+    public void start() {
+        if (intervalSeconds <= 0 || scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "Safeserver-Metrics");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::export, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        LOGGER.info("指标将每 {} 秒写入 {}", intervalSeconds, outputPath);
+    }
+
+    // 停止定时写入，并在调用线程上写出最后一次
+    public void stop() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdownNow();
+        scheduler = null;
+        export();
+    }
+
+    private void export() {
+        Path tempPath = outputPath.resolveSibling(outputPath.getFileName() + ".tmp");
+        try {
+            Files.writeString(tempPath, SafeserverMetrics.toPrometheus(), StandardCharsets.UTF_8);
+            Files.move(tempPath, outputPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("写入指标文件 {} 失败：{}", outputPath, e.getMessage());
+        }
+    }
+}
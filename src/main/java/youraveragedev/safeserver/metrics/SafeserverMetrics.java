@@ -0,0 +1,169 @@
+package youraveragedev.safeserver.metrics;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * 认证子系统的运行指标。
+ * 热路径只做无锁累加；读取时汇总为 /safeserver stats 的文本或 Prometheus 文本格式。
+ */
+public final class SafeserverMetrics {
+
+    // 受认证拦截的游戏行为回调
+    public enum GateCallback {
+        COMMAND,
+        ATTACK_BLOCK,
+        USE_BLOCK,
+        USE_ITEM,
+        ATTACK_ENTITY,
+        USE_ENTITY;
+
+        final String label = name().toLowerCase(Locale.ROOT);
+    }
+
+    private record Gauge(String name, String help, LongSupplier value) {}
+
+    public static final LatencyHistogram HASH_LATENCY = new LatencyHistogram(
+            "safeserver_hash_seconds", "为新密码生成凭据的耗时", 100_000L, 16);
+    public static final LatencyHistogram VERIFY_LATENCY = new LatencyHistogram(
+            "safeserver_verify_seconds", "校验密码的耗时", 100_000L, 16);
+    public static final LatencyHistogram FLUSH_LATENCY = new LatencyHistogram(
+            "safeserver_flush_seconds", "一次合并刷盘的耗时", 50_000L, 16);
+    public static final LatencyHistogram SESSION_DURATION = new LatencyHistogram(
+            "safeserver_session_duration_seconds", "从加入服务器到认证成功的时长", 250_000_000L, 14);
+    public static final LatencyHistogram ADMISSION_TICK = new LatencyHistogram(
+            "safeserver_admission_tick_seconds", "每 tick 处理入场队列的耗时", 10_000L, 14);
+
+    public static final LongAdder BYTES_WRITTEN = new LongAdder();
+    public static final LongAdder FREEZE_CORRECTIONS = new LongAdder();
+    public static final LongAdder FREEZE_BLOCKED_MOVES = new LongAdder();
+
+    // /safeserver stats 中列出的丢弃最多的数据包类型数
+    private static final int DROPPED_PACKETS_SUMMARY_LIMIT = 5;
+
+    private static final LongAdder[] GATE_CHECKS = newAdders(GateCallback.values().length);
+    private static final LongAdder[] GATE_BLOCKS = newAdders(GateCallback.values().length);
+
+    // 认证中玩家被数据包防火墙丢弃的数据包，按数据包类型计数
+    private static final Map<String, LongAdder> DROPPED_PACKETS = new ConcurrentHashMap<>();
+
+    private static final List<Gauge> GAUGES = new CopyOnWriteArrayList<>();
+
+    private SafeserverMetrics() {
+        throw new UnsupportedOperationException("此类为工具类，不可实例化。");
+    }
+
+    private static LongAdder[] newAdders(int length) {
+        LongAdder[] adders = new LongAdder[length];
+        for (int i = 0; i < length; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    public static void recordGate(GateCallback callback, boolean blocked) {
+        GATE_CHECKS[callback.ordinal()].increment();
+        if (blocked) {
+            GATE_BLOCKS[callback.ordinal()].increment();
+        }
+    }
+
+    public static void recordDroppedPacket(String packetType) {
+        DROPPED_PACKETS.computeIfAbsent(packetType, type -> new LongAdder()).increment();
+    }
+
+    // 注册一个在读取时取值的指标（队列深度、会话数等）
+    public static void registerGauge(String name, String help, LongSupplier value) {
+        GAUGES.removeIf(gauge -> gauge.name().equals(name));
+        GAUGES.add(new Gauge(name, help, value));
+    }
+
+    public static List<String> summary() {
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format(Locale.ROOT, "哈希：%d 次，p50 %s，p99 %s", HASH_LATENCY.getCount(),
+                formatNanos(HASH_LATENCY.percentileNanos(0.5)), formatNanos(HASH_LATENCY.percentileNanos(0.99))));
+        lines.add(String.format(Locale.ROOT, "校验：%d 次，p50 %s，p99 %s", VERIFY_LATENCY.getCount(),
+                formatNanos(VERIFY_LATENCY.percentileNanos(0.5)), formatNanos(VERIFY_LATENCY.percentileNanos(0.99))));
+        lines.add(String.format(Locale.ROOT, "刷盘：%d 次，p99 %s，共写入 %d 字节", FLUSH_LATENCY.getCount(),
+                formatNanos(FLUSH_LATENCY.percentileNanos(0.99)), BYTES_WRITTEN.sum()));
+        lines.add(String.format(Locale.ROOT, "认证时长：%d 次，p50 %s，p99 %s", SESSION_DURATION.getCount(),
+                formatNanos(SESSION_DURATION.percentileNanos(0.5)), formatNanos(SESSION_DURATION.percentileNanos(0.99))));
+        lines.add(String.format(Locale.ROOT, "位置冻结：拦截移动 %d 次，纠正传送 %d 次", FREEZE_BLOCKED_MOVES.sum(), FREEZE_CORRECTIONS.sum()));
+        StringBuilder gate = new StringBuilder("拦截检查（检查/拦截）：");
+        for (GateCallback callback : GateCallback.values()) {
+            gate.append(callback.label).append(' ')
+                    .append(GATE_CHECKS[callback.ordinal()].sum()).append('/')
+                    .append(GATE_BLOCKS[callback.ordinal()].sum()).append("  ");
+        }
+        lines.add(gate.toString().trim());
+        if (!DROPPED_PACKETS.isEmpty()) {
+            StringBuilder dropped = new StringBuilder("防火墙丢弃的数据包：");
+            DROPPED_PACKETS.entrySet().stream()
+                    .sorted(Comparator.comparingLong((Map.Entry<String, LongAdder> entry) -> entry.getValue().sum()).reversed())
+                    .limit(DROPPED_PACKETS_SUMMARY_LIMIT)
+                    .forEach(entry -> dropped.append(entry.getKey()).append(' ').append(entry.getValue().sum()).append("  "));
+            lines.add(dropped.toString().trim());
+        }
+        for (Gauge gauge : GAUGES) {
+            lines.add(gauge.help() + "：" + gauge.value().getAsLong());
+        }
+        return lines;
+    }
+
+    public static String toPrometheus() {
+        StringBuilder out = new StringBuilder(4096);
+        HASH_LATENCY.writePrometheus(out);
+        VERIFY_LATENCY.writePrometheus(out);
+        FLUSH_LATENCY.writePrometheus(out);
+        SESSION_DURATION.writePrometheus(out);
+        ADMISSION_TICK.writePrometheus(out);
+        writeCounter(out, "safeserver_storage_bytes_written_total", "凭据存储写入的字节数", BYTES_WRITTEN.sum());
+        writeCounter(out, "safeserver_freeze_blocked_moves_total", "被拦截的认证中玩家移动数据包", FREEZE_BLOCKED_MOVES.sum());
+        writeCounter(out, "safeserver_freeze_corrections_total", "位置冻结发送的纠正传送", FREEZE_CORRECTIONS.sum());
+        writeLabelled(out, "safeserver_gate_checks_total", "游戏行为回调的认证检查次数", GATE_CHECKS);
+        writeLabelled(out, "safeserver_gate_blocks_total", "游戏行为回调被拦截的次数", GATE_BLOCKS);
+        out.append("# HELP safeserver_firewall_dropped_packets_total 认证中玩家被丢弃的入站数据包\n");
+        out.append("# TYPE safeserver_firewall_dropped_packets_total counter\n");
+        DROPPED_PACKETS.forEach((type, count) -> out.append("safeserver_firewall_dropped_packets_total{packet=\"")
+                .append(type).append("\"} ").append(count.sum()).append('\n'));
+        for (Gauge gauge : GAUGES) {
+            out.append("# HELP ").append(gauge.name()).append(' ').append(gauge.help()).append('\n');
+            out.append("# TYPE ").append(gauge.name()).append(gauge.name().endsWith("_total") ? " counter\n" : " gauge\n");
+            out.append(gauge.name()).append(' ').append(gauge.value().getAsLong()).append('\n');
+        }
+        return out.toString();
+    }
+
+    private static void writeCounter(StringBuilder out, String name, String help, long value) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" counter\n");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void writeLabelled(StringBuilder out, String name, String help, LongAdder[] values) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" counter\n");
+        for (GateCallback callback : GateCallback.values()) {
+            out.append(name).append("{callback=\"").append(callback.label).append("\"} ")
+                    .append(values[callback.ordinal()].sum()).append('\n');
+        }
+    }
+
+    private static String formatNanos(long nanos) {
+        if (nanos >= TimeUnit.SECONDS.toNanos(1)) {
+            return String.format(Locale.ROOT, "≤%.1fs", nanos / 1e9);
+        }
+        if (nanos >= TimeUnit.MILLISECONDS.toNanos(1)) {
+            return String.format(Locale.ROOT, "≤%.1fms", nanos / 1e6);
+        }
+        return String.format(Locale.ROOT, "≤%dµs", TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+}
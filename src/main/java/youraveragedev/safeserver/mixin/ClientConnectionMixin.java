@@ -0,0 +1,24 @@
+package youraveragedev.safeserver.mixin;
+
+import net.minecraft.network.ClientConnection;
+import net.minecraft.network.listener.PacketListener;
+import net.minecraft.network.packet.Packet;
+import net.minecraft.server.network.ServerPlayNetworkHandler;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+import youraveragedev.safeserver.PacketFirewall;
+import youraveragedev.safeserver.gate.AuthGate;
+
+@Mixin(ClientConnection.class)
+public abstract class ClientConnectionMixin {
+	// 数据包分发给游戏阶段处理器之前的入口：认证中玩家不在白名单内的数据包直接丢弃，不进入主线程队列
+	@Inject(at = @At("HEAD"), method = "handlePacket", cancellable = true)
+	private static void safeserver$filterGatedPackets(Packet<?> packet, PacketListener listener, CallbackInfo info) {
+		if (AuthGate.isAnyoneAuthenticating() && listener instanceof ServerPlayNetworkHandler handler
+				&& !PacketFirewall.accepts(handler.player, packet)) {
+			info.cancel();
+		}
+	}
+}
@@ -0,0 +1,32 @@
+package youraveragedev.safeserver.mixin;
+
+import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.ParseResults;
+import net.minecraft.server.command.CommandManager;
+import net.minecraft.server.command.ServerCommandSource;
+import org.spongepowered.asm.mixin.Final;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+import youraveragedev.safeserver.command.AuthCommands;
+
+@Mixin(CommandManager.class)
+public abstract class CommandManagerMixin {
+	@Shadow
+	@Final
+	private CommandDispatcher<ServerCommandSource> dispatcher;
+
+	// 所有模组的命令都已注册（包括 /reload 后重建的命令树），为根命令加上认证条件
+	@Inject(at = @At("RETURN"), method = "<init>")
+	private void safeserver$restrictCommandsDuringAuthentication(CallbackInfo info) {
+		AuthCommands.restrictRootCommands(this.dispatcher);
+	}
+
+	// 统计玩家执行的命令及其中被认证拦截的次数
+	@Inject(at = @At("HEAD"), method = "execute(Lcom/mojang/brigadier/ParseResults;Ljava/lang/String;)V")
+	private void safeserver$recordCommandExecution(ParseResults<ServerCommandSource> parseResults, String command, CallbackInfo info) {
+		AuthCommands.recordExecution(parseResults);
+	}
+}
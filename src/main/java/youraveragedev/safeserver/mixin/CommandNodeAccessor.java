@@ -0,0 +1,16 @@
+package youraveragedev.safeserver.mixin;
+
+import com.mojang.brigadier.tree.CommandNode;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Mutable;
+import org.spongepowered.asm.mixin.gen.Accessor;
+
+import java.util.function.Predicate;
+
+// 替换已注册命令节点的 requires 条件（Brigadier 未提供修改接口）
+@Mixin(value = CommandNode.class, remap = false)
+public interface CommandNodeAccessor<S> {
+	@Mutable
+	@Accessor("requirement")
+	void safeserver$setRequirement(Predicate<S> requirement);
+}
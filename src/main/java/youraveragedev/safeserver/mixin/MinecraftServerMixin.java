@@ -0,0 +1,30 @@
+package youraveragedev.safeserver.mixin;
+
+import com.mojang.authlib.GameProfile;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.PlayerManager;
+import net.minecraft.server.network.ServerPlayerEntity;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+import youraveragedev.safeserver.gate.AuthGate;
+
+@Mixin(MinecraftServer.class)
+public abstract class MinecraftServerMixin {
+	@Shadow
+	public abstract PlayerManager getPlayerManager();
+
+	// 认证中的玩家权限等级视为 0，OP 列表本身保持不变
+	@Inject(at = @At("HEAD"), method = "getPermissionLevel", cancellable = true)
+	private void safeserver$maskPermissionLevel(GameProfile profile, CallbackInfoReturnable<Integer> info) {
+		if (!AuthGate.isAnyoneAuthenticating() || this.getPlayerManager() == null) {
+			return;
+		}
+		ServerPlayerEntity player = this.getPlayerManager().getPlayer(profile.getId());
+		if (AuthGate.isGated(player)) {
+			info.setReturnValue(0);
+		}
+	}
+}
@@ -0,0 +1,13 @@
+package youraveragedev.safeserver.mixin;
+
+import net.minecraft.network.ClientConnection;
+import net.minecraft.server.network.ServerCommonNetworkHandler;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Accessor;
+
+// 游戏阶段的连接对象，与登录阶段完成伴随模组握手的连接核对
+@Mixin(ServerCommonNetworkHandler.class)
+public interface ServerCommonNetworkHandlerAccessor {
+	@Accessor("connection")
+	ClientConnection safeserver$getConnection();
+}
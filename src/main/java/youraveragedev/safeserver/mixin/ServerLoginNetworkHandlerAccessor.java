@@ -0,0 +1,17 @@
+package youraveragedev.safeserver.mixin;
+
+import com.mojang.authlib.GameProfile;
+import net.minecraft.network.ClientConnection;
+import net.minecraft.server.network.ServerLoginNetworkHandler;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Accessor;
+
+// 登录阶段的伴随模组握手需要读取正在登录的玩家资料与连接地址
+@Mixin(ServerLoginNetworkHandler.class)
+public interface ServerLoginNetworkHandlerAccessor {
+	@Accessor("profile")
+	GameProfile safeserver$getProfile();
+
+	@Accessor("connection")
+	ClientConnection safeserver$getConnection();
+}
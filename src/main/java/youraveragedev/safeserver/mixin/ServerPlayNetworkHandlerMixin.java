@@ -0,0 +1,52 @@
+package youraveragedev.safeserver.mixin;
+
+import net.minecraft.network.packet.c2s.play.PlayerMoveC2SPacket;
+import net.minecraft.server.network.ServerPlayNetworkHandler;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.util.math.Vec3d;
+import net.minecraft.util.profiler.Profiler;
+import net.minecraft.util.profiler.Profilers;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+import youraveragedev.safeserver.gate.AuthGate;
+import youraveragedev.safeserver.metrics.SafeserverMetrics;
+
+// 认证中玩家的位置冻结：在移动数据包到达时拦截，而不是每 tick 轮询（载具移动、旁观传送等其余数据包由 PacketFirewall 丢弃）
+@Mixin(ServerPlayNetworkHandler.class)
+public abstract class ServerPlayNetworkHandlerMixin {
+	@Shadow
+	public ServerPlayerEntity player;
+
+	@Shadow
+	private Vec3d requestedTeleportPos;
+
+	@Shadow
+	public abstract void requestTeleport(double x, double y, double z, float yaw, float pitch);
+
+	// 服务端位置在进入认证时已设为冻结点，此后不再接受客户端移动，因此当前位置即冻结点
+	@Inject(at = @At(value = "INVOKE", target = "Lnet/minecraft/network/NetworkThreadUtils;forceMainThread", shift = At.Shift.AFTER), method = "onPlayerMove", cancellable = true)
+	private void safeserver$freezePlayerMove(PlayerMoveC2SPacket packet, CallbackInfo info) {
+		if (!AuthGate.isGated(this.player) || !packet.changesPosition()) {
+			return;
+		}
+		info.cancel();
+		SafeserverMetrics.FREEZE_BLOCKED_MOVES.increment();
+
+		// 上一次纠正尚未被客户端确认时不重复发送
+		if (this.requestedTeleportPos != null) {
+			return;
+		}
+		if (packet.getX(this.player.getX()) != this.player.getX()
+				|| packet.getY(this.player.getY()) != this.player.getY()
+				|| packet.getZ(this.player.getZ()) != this.player.getZ()) {
+			Profiler profiler = Profilers.get();
+			profiler.push("safeserver_freeze");
+			this.requestTeleport(this.player.getX(), this.player.getY(), this.player.getZ(), this.player.getYaw(), this.player.getPitch());
+			profiler.pop();
+			SafeserverMetrics.FREEZE_CORRECTIONS.increment();
+		}
+	}
+}
@@ -0,0 +1,31 @@
+package youraveragedev.safeserver.mixin;
+
+import net.minecraft.server.network.ServerPlayerEntity;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Unique;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+import youraveragedev.safeserver.gate.AuthGatedPlayer;
+
+@Mixin(ServerPlayerEntity.class)
+public abstract class ServerPlayerEntityMixin implements AuthGatedPlayer {
+	@Unique
+	private volatile boolean safeserver$authGated;
+
+	@Override
+	public boolean safeserver$isAuthGated() {
+		return this.safeserver$authGated;
+	}
+
+	@Override
+	public void safeserver$setAuthGated(boolean gated) {
+		this.safeserver$authGated = gated;
+	}
+
+	// 重生或离开末地时会创建新的玩家实体，认证标记随之转移
+	@Inject(at = @At("TAIL"), method = "copyFrom")
+	private void safeserver$copyAuthGate(ServerPlayerEntity oldPlayer, boolean alive, CallbackInfo info) {
+		this.safeserver$authGated = ((AuthGatedPlayer) oldPlayer).safeserver$isAuthGated();
+	}
+}
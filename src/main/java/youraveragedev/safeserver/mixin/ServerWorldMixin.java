@@ -0,0 +1,18 @@
+package youraveragedev.safeserver.mixin;
+
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+import youraveragedev.safeserver.LimboSpawnCache;
+
+@Mixin(ServerWorld.class)
+public abstract class ServerWorldMixin {
+	// 世界出生点变化（/setworldspawn 等）时通知认证等待区缓存，下一 tick 开始预先加载新位置的区块
+	@Inject(at = @At("TAIL"), method = "setSpawnPos")
+	private void safeserver$invalidateLimboSpawn(BlockPos pos, float angle, CallbackInfo info) {
+		LimboSpawnCache.onSpawnChanged();
+	}
+}
@@ -0,0 +1,35 @@
+package youraveragedev.safeserver.network;
+
+import net.minecraft.network.RegistryByteBuf;
+import net.minecraft.network.codec.PacketCodec;
+import net.minecraft.network.codec.PacketCodecs;
+import net.minecraft.network.packet.CustomPayload;
+import net.minecraft.util.Identifier;
+import youraveragedev.safeserver.Safeserver;
+
+/**
+ * 客户端伴随模组与服务器之间的通道定义，服务器与客户端共用。
+ * 登录阶段：服务器发送 UUID 与挑战，客户端回复对挑战的 HMAC；客户端未安装伴随模组时回复“不理解”。
+ * 游戏阶段：认证成功后服务器发送该玩家的伴随密钥。
+ */
+public final class CompanionProtocol {
+    
+    // 登录阶段挑战的查询通道
+    public static final Identifier LOGIN_CHANNEL = Identifier.of(Safeserver.MOD_ID, "companion_login");
+    
+    private CompanionProtocol() {
+    }
+    
+    // 服务器发给客户端的伴随密钥
+    public record KeyPayload(byte[] key) implements CustomPayload {
+        public static final CustomPayload.Id<KeyPayload> ID = new CustomPayload.Id<>(Identifier.of(Safeserver.MOD_ID, "companion_key"));
+        public static final PacketCodec<RegistryByteBuf, KeyPayload> CODEC = PacketCodec.tuple(
+                PacketCodecs.BYTE_ARRAY, KeyPayload::key,
+                KeyPayload::new);
+        
+        @Override
+        public CustomPayload.Id<? extends CustomPayload> getId() {
+            return ID;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package youraveragedev.safeserver.platform;
+
+import java.util.UUID;
+
+/**
+ * 认证核心所见的在线玩家。
+ * 认证逻辑只通过此接口操作玩家，游戏内实现包装 ServerPlayerEntity，负载模拟使用内存中的假玩家。
+ * 认证标记委托给底层玩家对象，与游戏内回调检查的是同一个标记。
+ */
+public interface PlayerHandle {
+
+    UUID getUuid();
+
+    String getName();
+
+    // 客户端 IP 地址，无法获取时返回 null
+    String getAddress();
+
+    // 玩家所在的网络连接（登录阶段与游戏阶段为同一对象），用于核对登录阶段握手的许可
+    Object getConnection();
+
+    boolean isOperator();
+
+    void sendMessage(String message);
+
+    boolean isAuthGated();
+
+    void setAuthGated(boolean gated);
+
+    // 记录进入认证前的游戏模式与位置
+    PlayerSnapshot captureState();
+
+    // 切换旁观模式、传送至等待区并添加失明效果
+    void enterLimbo(SpawnPoint limbo);
+
+    // 恢复进入认证前的状态，返回是否完全恢复
+    boolean restoreState(PlayerSnapshot original);
+
+    // 有效权限等级变化后重新发送命令树
+    void refreshCommandTree();
+
+    // 把伴随密钥发给客户端；客户端未安装伴随模组时忽略
+    void sendCompanionKey(byte[] key);
+}
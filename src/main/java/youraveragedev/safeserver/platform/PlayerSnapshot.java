@@ -0,0 +1,8 @@
+package youraveragedev.safeserver.platform;
+
+/**
+ * 玩家进入认证前的状态（游戏模式、位置等）。
+ * 内容由创建它的 {@link PlayerHandle} 实现决定，认证核心只负责保存并在恢复时原样交回。
+ */
+public interface PlayerSnapshot {
+}
@@ -0,0 +1,12 @@
+package youraveragedev.safeserver.platform;
+
+import java.util.UUID;
+
+/**
+ * 认证核心所需的服务器功能。
+ */
+public interface ServerFacade {
+
+    // 返回在线玩家，不在线或服务器尚未启动时返回 null
+    PlayerHandle getPlayer(UUID playerUuid);
+}
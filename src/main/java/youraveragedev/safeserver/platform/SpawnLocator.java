@@ -0,0 +1,10 @@
+package youraveragedev.safeserver.platform;
+
+/**
+ * 认证等待区坐标查询。
+ */
+public interface SpawnLocator {
+
+    // 返回等待区坐标；世界尚不可用时返回 null，由调用方使用备用坐标
+    SpawnPoint getLimboSpawn();
+}
@@ -0,0 +1,5 @@
+package youraveragedev.safeserver.platform;
+
+// 与游戏版本无关的世界坐标
+public record SpawnPoint(double x, double y, double z) {
+}
@@ -0,0 +1,238 @@
+package youraveragedev.safeserver.storage;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * 置于非堆凭据后端之前的有界热点账号缓存。
+ * 缓存按最近访问顺序排列，满时只有当新条目的访问频率高于最久未用的条目时才替换它（TinyLFU 准入），
+ * 因此大量一次性查询（新玩家、扫描式登录尝试）不会把在线玩家的凭据挤出缓存。
+ * 写入先落到后端再更新缓存，缓存中的凭据始终与后端一致。
+ */
+public class CachingCredentialStore implements CredentialStore {
+
+    private final CredentialStore delegate;
+
+    private final int maxEntries;
+
+    // 以下字段由 lock 保护
+    private final Object lock = new Object();
+    private final LinkedHashMap<UUID, Credential> entries;
+    private final FrequencySketch sketch;
+    // 每次写入递增；未命中时在读取后端前后比较，避免把写入前读到的旧凭据放入缓存
+    private long writeVersion;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+
+    public CachingCredentialStore(CredentialStore delegate, int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("缓存容量必须为正数：" + maxEntries);
+        }
+        this.delegate = delegate;
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.sketch = new FrequencySketch(maxEntries);
+    }
+
+    @Override
+    public void load() {
+        delegate.load();
+    }
+
+    // 经由缓存判断，加入时的查询同时把凭据预热到缓存中供随后的 /login 使用
+    @Override
+    public boolean contains(UUID playerUuid) {
+        return get(playerUuid) != null;
+    }
+
+    @Override
+    public Credential get(UUID playerUuid) {
+        long version;
+        synchronized (lock) {
+            sketch.increment(playerUuid);
+            Credential cached = entries.get(playerUuid);
+            if (cached != null) {
+                hits.increment();
+                return cached;
+            }
+            version = writeVersion;
+        }
+        misses.increment();
+
+        // 在锁外读取后端，未命中不阻塞其他玩家的命中
+        Credential credential = delegate.get(playerUuid);
+        if (credential != null) {
+            synchronized (lock) {
+                if (version == writeVersion && !entries.containsKey(playerUuid)) {
+                    admit(playerUuid, credential);
+                }
+            }
+        }
+        return credential;
+    }
+
+    @Override
+    public void put(UUID playerUuid, Credential credential) {
+        synchronized (lock) {
+            delegate.put(playerUuid, credential);
+            writeVersion++;
+            sketch.increment(playerUuid);
+            if (entries.containsKey(playerUuid)) {
+                entries.put(playerUuid, credential);
+            } else {
+                admit(playerUuid, credential);
+            }
+        }
+    }
+
+    @Override
+    public boolean remove(UUID playerUuid) {
+        synchronized (lock) {
+            writeVersion++;
+            entries.remove(playerUuid);
+            return delegate.remove(playerUuid);
+        }
+    }
+
+    @Override
+    public int size() {
+        return delegate.size();
+    }
+
+    @Override
+    public void forEach(BiConsumer<UUID, Credential> action) {
+        delegate.forEach(action);
+    }
+
+    @Override
+    public void flush() {
+        delegate.flush();
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    @Override
+    public CredentialFlusher getFlusher() {
+        return delegate.getFlusher();
+    }
+
+    public int getCachedCount() {
+        synchronized (lock) {
+            return entries.size();
+        }
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    // 因访问频率不高于淘汰候选而未放入缓存的次数
+    public long getRejections() {
+        return rejections.sum();
+    }
+
+    // 调用方持有 lock
+    private void admit(UUID playerUuid, Credential credential) {
+        if (entries.size() < maxEntries) {
+            entries.put(playerUuid, credential);
+            return;
+        }
+        Iterator<Map.Entry<UUID, Credential>> eldest = entries.entrySet().iterator();
+        UUID victim = eldest.next().getKey();
+        if (sketch.frequency(playerUuid) <= sketch.frequency(victim)) {
+            rejections.increment();
+            return;
+        }
+        eldest.remove();
+        evictions.increment();
+        entries.put(playerUuid, credential);
+    }
+
+    /**
+     * 访问频率估计：4 行 4 位饱和计数器的 Count-Min Sketch。
+     * 累计递增次数达到容量的 10 倍后所有计数器减半，使过去的热点逐渐失去优势。
+     */
+    private static final class FrequencySketch {
+        private static final long[] SEEDS = {
+            0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L
+        };
+        private static final int MAX_COUNT = 15;
+
+        private final byte[][] rows;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int maxEntries) {
+            int width = Integer.highestOneBit(Math.max(16, maxEntries - 1)) << 1;
+            this.rows = new byte[SEEDS.length][width];
+            this.mask = width - 1;
+            this.sampleSize = (int) Math.min(Integer.MAX_VALUE, 10L * maxEntries);
+        }
+
+        int frequency(UUID playerUuid) {
+            long hash = hash(playerUuid);
+            int min = MAX_COUNT;
+            for (int row = 0; row < rows.length; row++) {
+                min = Math.min(min, rows[row][indexOf(hash, row)]);
+            }
+            return min;
+        }
+
+        void increment(UUID playerUuid) {
+            long hash = hash(playerUuid);
+            boolean added = false;
+            for (int row = 0; row < rows.length; row++) {
+                int index = indexOf(hash, row);
+                if (rows[row][index] < MAX_COUNT) {
+                    rows[row][index]++;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                reset();
+            }
+        }
+
+        private void reset() {
+            for (byte[] row : rows) {
+                for (int i = 0; i < row.length; i++) {
+                    row[i] >>>= 1;
+                }
+            }
+            additions >>>= 1;
+        }
+
+        private int indexOf(long hash, int row) {
+            long mixed = (hash + SEEDS[row]) * SEEDS[row];
+            return (int) (mixed ^ (mixed >>> 32)) & mask;
+        }
+
+        private static long hash(UUID playerUuid) {
+            long h = playerUuid.getMostSignificantBits() ^ Long.rotateLeft(playerUuid.getLeastSignificantBits(), 29);
+            return h ^ (h >>> 31);
+        }
+    }
+}
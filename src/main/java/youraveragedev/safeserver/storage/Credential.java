@@ -0,0 +1,113 @@
+package youraveragedev.safeserver.storage;
+
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HexFormat;
+
+/**
+ * 一条玩家凭据：哈希算法标识、算法参数（迭代次数、盐）与原始哈希字节。
+ * 内存中只保存原始字节，字符串形式仅在 JSON 持久化边界转换：
+ * 旧版 SHA-256 凭据仍为 64 位十六进制，其余算法为 "算法$迭代次数$盐$哈希"（Base64）。
+ */
+public final class Credential {
+    public static final byte ALGORITHM_SHA256 = 1;
+    public static final byte ALGORITHM_PBKDF2_SHA256 = 2;
+
+    public static final int HASH_LENGTH = 32;
+    public static final int MAX_SALT_LENGTH = 16;
+
+    private static final String PBKDF2_SHA256_NAME = "pbkdf2-sha256";
+    private static final byte[] NO_SALT = new byte[0];
+    private static final HexFormat HEX = HexFormat.of();
+    private static final Base64.Encoder BASE64_ENCODER = Base64.getEncoder().withoutPadding();
+    private static final Base64.Decoder BASE64_DECODER = Base64.getDecoder();
+
+    private final byte algorithm;
+    private final int iterations;
+    private final byte[] salt;
+    private final byte[] hash;
+
+    private Credential(byte algorithm, int iterations, byte[] salt, byte[] hash) {
+        this.algorithm = algorithm;
+        this.iterations = iterations;
+        this.salt = salt;
+        this.hash = hash;
+    }
+
+    // 旧版无盐 SHA-256 凭据
+    public static Credential sha256(byte[] hash) {
+        return of(ALGORITHM_SHA256, 1, NO_SALT, hash);
+    }
+
+    public static Credential pbkdf2Sha256(int iterations, byte[] salt, byte[] hash) {
+        return of(ALGORITHM_PBKDF2_SHA256, iterations, salt, hash);
+    }
+
+    // 由算法标识、参数和原始哈希字节构造（二进制存储后端使用）
+    public static Credential of(byte algorithm, int iterations, byte[] salt, byte[] hash) {
+        if (algorithm != ALGORITHM_SHA256 && algorithm != ALGORITHM_PBKDF2_SHA256) {
+            throw new IllegalArgumentException("不支持的哈希算法：" + algorithm);
+        }
+        if (hash.length != HASH_LENGTH) {
+            throw new IllegalArgumentException("哈希长度必须为 " + HASH_LENGTH + " 字节");
+        }
+        if (salt.length > MAX_SALT_LENGTH || iterations < 1) {
+            throw new IllegalArgumentException("无效的哈希参数");
+        }
+        return new Credential(algorithm, iterations, salt.length == 0 ? NO_SALT : salt, hash);
+    }
+
+    // 从持久化格式解析
+    public static Credential fromStorageString(String value) {
+        if (value == null) {
+            throw new IllegalArgumentException("不支持的密码哈希格式");
+        }
+        if (value.length() == HASH_LENGTH * 2 && value.indexOf('$') < 0) {
+            return sha256(HEX.parseHex(value));
+        }
+        String[] parts = value.split("\\$");
+        if (parts.length == 4 && parts[0].equals(PBKDF2_SHA256_NAME)) {
+            return pbkdf2Sha256(Integer.parseInt(parts[1]), BASE64_DECODER.decode(parts[2]), BASE64_DECODER.decode(parts[3]));
+        }
+        throw new IllegalArgumentException("不支持的密码哈希格式");
+    }
+
+    public String toStorageString() {
+        if (algorithm == ALGORITHM_SHA256) {
+            return HEX.formatHex(hash);
+        }
+        return PBKDF2_SHA256_NAME + '$' + iterations + '$' + BASE64_ENCODER.encodeToString(salt) + '$' + BASE64_ENCODER.encodeToString(hash);
+    }
+
+    public byte algorithm() {
+        return algorithm;
+    }
+
+    public int iterations() {
+        return iterations;
+    }
+
+    // 返回内部数组，调用方不得修改
+    public byte[] salt() {
+        return salt;
+    }
+
+    // 返回内部数组，调用方不得修改
+    public byte[] hash() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Credential that
+                && algorithm == that.algorithm
+                && iterations == that.iterations
+                && Arrays.equals(salt, that.salt)
+                && Arrays.equals(hash, that.hash);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(hash);
+    }
+}
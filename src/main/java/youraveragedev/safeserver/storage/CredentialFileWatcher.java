@@ -0,0 +1,118 @@
+package youraveragedev.safeserver.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 监视密码文件的外部修改（WatchService），在独立线程上回调。
+ * 外部工具通常分多次写入，收到事件后等待文件静默一段时间再回调；
+ * 文件的修改时间与大小和已处理过的版本（包括模组自己写出的快照）相同时不回调。
+ */
+public class CredentialFileWatcher {
+    private static final Logger LOGGER = LoggerFactory.getLogger("safeserver-storage");
+
+    // 文件的修改时间与大小，用于识别同一版本
+    public record FileStamp(long modifiedMillis, long size) {
+
+        public static FileStamp of(Path path) throws IOException {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            return new FileStamp(attributes.lastModifiedTime().toMillis(), attributes.size());
+        }
+    }
+
+    private final Path watchedFile;
+    private final long quietMillis;
+    private final Consumer<FileStamp> onChange;
+
+    // 最近一次已处理（或由模组自己写出）的文件版本
+    private volatile FileStamp knownStamp;
+
+    private WatchService watchService;
+
+    public CredentialFileWatcher(Path watchedFile, long quietMillis, Consumer<FileStamp> onChange) {
+        this.watchedFile = watchedFile.toAbsolutePath();
+        this.quietMillis = quietMillis;
+        this.onChange = onChange;
+    }
+
+    // 记录一个已知版本（模组自己写出的快照或已应用的外部修改），之后该版本的事件不再回调
+    public void markKnown(FileStamp stamp) {
+        knownStamp = stamp;
+    }
+
+    public void start() throws IOException {
+        watchService = FileSystems.getDefault().newWatchService();
+        watchedFile.getParent().register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        Thread thread = new Thread(this::run, "Safeserver-CredentialWatch");
+        thread.setDaemon(true);
+        thread.start();
+        LOGGER.info("正在监视密码文件 {} 的外部修改。", watchedFile);
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                if (!drainEvents(watchService.take())) {
+                    continue;
+                }
+                // 等待写入静默，期间的后续事件合并为一次
+                WatchKey next;
+                while ((next = watchService.poll(quietMillis, TimeUnit.MILLISECONDS)) != null) {
+                    drainEvents(next);
+                }
+                handleChange();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            LOGGER.warn("密码文件监视已关闭。");
+        }
+    }
+
+    // 处理一批事件并重新登记监视键，返回其中是否有密码文件的事件
+    private boolean drainEvents(WatchKey key) {
+        boolean relevant = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.context() instanceof Path changed && changed.equals(watchedFile.getFileName())) {
+                relevant = true;
+            }
+        }
+        key.reset();
+        return relevant;
+    }
+
+    private void handleChange() {
+        FileStamp stamp;
+        try {
+            stamp = FileStamp.of(watchedFile);
+        } catch (NoSuchFileException e) {
+            return;
+        } catch (IOException e) {
+            LOGGER.warn("读取密码文件 {} 的属性失败：{}", watchedFile, e.getMessage());
+            return;
+        }
+        if (stamp.equals(knownStamp)) {
+            return;
+        }
+        try {
+            onChange.accept(stamp);
+        } catch (RuntimeException e) {
+            LOGGER.error("重新加载密码文件 {} 失败", watchedFile, e);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package youraveragedev.safeserver.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import youraveragedev.safeserver.metrics.SafeserverMetrics;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 凭据变更的合并刷盘调度器（group commit）。
+ * 变更先进入内存队列并置脏标记，同一时刻最多只有一个待执行的刷盘任务，
+ * 最迟在配置的延迟后把期间积累的全部变更一次性交给 {@link FlushSink} 写入磁盘。
+ */
+public class CredentialFlusher {
+    private static final Logger LOGGER = LoggerFactory.getLogger("safeserver-flusher");
+
+    // 实际执行写盘的目标（在 IO 线程上调用）
+    @FunctionalInterface
+    public interface FlushSink {
+        void write(List<PasswordChange> changes) throws IOException;
+    }
+
+    private final FlushSink sink;
+    private final long maxDelayMillis;
+    private final ConcurrentLinkedQueue<PasswordChange> pendingChanges = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    // 上次写入失败的批次，仅在 IO 线程访问，下次刷盘时排在新变更之前
+    private final List<PasswordChange> retryBatch = new ArrayList<>();
+    // IO 线程在首次使用时创建，close 后置空；集成服务器再次启动时重新创建
+    private ScheduledExecutorService ioExecutor;
+
+    // 刷盘统计
+    private final LongAdder flushCount = new LongAdder();
+    private final LongAdder flushedChanges = new LongAdder();
+    private final LongAdder failedFlushes = new LongAdder();
+    private final AtomicLong lastFlushNanos = new AtomicLong();
+    private final AtomicLong maxFlushNanos = new AtomicLong();
+    private final AtomicInteger lastCoalescedChanges = new AtomicInteger();
+
+    public CredentialFlusher(FlushSink sink, long maxDelayMillis) {
+        this.sink = sink;
+        this.maxDelayMillis = Math.max(0L, maxDelayMillis);
+    }
+
+    // 提交一条变更，若当前没有待执行的刷盘则安排一次
+    public void submit(PasswordChange change) {
+        pendingChanges.add(change);
+        pendingCount.incrementAndGet();
+        if (flushScheduled.compareAndSet(false, true)) {
+            ioExecutor().schedule(this::flush, maxDelayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // 在 IO 线程上执行一次性任务（如快照压缩），与刷盘串行
+    public void execute(Runnable task) {
+        ioExecutor().execute(() -> {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                LOGGER.error("文件 IO 任务执行失败", e);
+            }
+        });
+    }
+
+    // 立即写出所有待刷盘的变更并等待完成，用于服务器停止时的最终落盘
+    public void drain() {
+        try {
+            ioExecutor().submit(this::flush).get(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.error("等待凭据最终落盘时被中断，仍有 {} 条变更未写入。", pendingCount.get());
+        } catch (ExecutionException | TimeoutException e) {
+            LOGGER.error("凭据最终落盘失败，仍有 {} 条变更未写入。", pendingCount.get(), e);
+        }
+    }
+
+    // 停止 IO 线程，已提交的任务执行完毕后返回；调用前应先 drain。之后再提交变更会重新创建 IO 线程
+    public void close() {
+        ScheduledExecutorService executor;
+        synchronized (this) {
+            executor = ioExecutor;
+            ioExecutor = null;
+        }
+        if (executor == null) {
+            return;
+        }
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                LOGGER.error("文件 IO 线程未能在 30 秒内停止。");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.error("等待文件 IO 线程停止时被中断。");
+        }
+    }
+
+    public int getPendingCount() {
+        return pendingCount.get();
+    }
+
+    public long getFlushCount() {
+        return flushCount.sum();
+    }
+
+    public long getFlushedChanges() {
+        return flushedChanges.sum();
+    }
+
+    public long getFailedFlushes() {
+        return failedFlushes.sum();
+    }
+
+    public long getLastFlushNanos() {
+        return lastFlushNanos.get();
+    }
+
+    public long getMaxFlushNanos() {
+        return maxFlushNanos.get();
+    }
+
+    public int getLastCoalescedChanges() {
+        return lastCoalescedChanges.get();
+    }
+
+    private synchronized ScheduledExecutorService ioExecutor() {
+        if (ioExecutor == null) {
+            ioExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "Safeserver-FileIO");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return ioExecutor;
+    }
+
+    private void flush() {
+        // 先清除标记再取队列，保证之后提交的变更会安排新的刷盘
+        flushScheduled.set(false);
+        List<PasswordChange> batch = new ArrayList<>(retryBatch);
+        retryBatch.clear();
+        PasswordChange change;
+        while ((change = pendingChanges.poll()) != null) {
+            batch.add(change);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            sink.write(batch);
+        } catch (IOException | RuntimeException e) {
+            failedFlushes.increment();
+            LOGGER.error("写入 {} 条凭据变更失败，将在下次刷盘时重试：{}", batch.size(), e.getMessage());
+            retryBatch.addAll(batch);
+            if (flushScheduled.compareAndSet(false, true)) {
+                try {
+                    ioExecutor().schedule(this::flush, Math.max(maxDelayMillis, 1000L), TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException closing) {
+                    // 正在关闭：失败的批次留待下次提交变更时重试
+                    flushScheduled.set(false);
+                }
+            }
+            return;
+        }
+        long elapsed = System.nanoTime() - start;
+
+        pendingCount.addAndGet(-batch.size());
+        flushCount.increment();
+        flushedChanges.add(batch.size());
+        lastFlushNanos.set(elapsed);
+        lastCoalescedChanges.set(batch.size());
+        maxFlushNanos.accumulateAndGet(elapsed, Math::max);
+        SafeserverMetrics.FLUSH_LATENCY.record(elapsed);
+        LOGGER.debug("已合并 {} 条凭据变更写入磁盘，耗时 {} 微秒。", batch.size(), TimeUnit.NANOSECONDS.toMicros(elapsed));
+    }
+}
@@ -0,0 +1,38 @@
+package youraveragedev.safeserver.storage;
+
+import java.util.UUID;
+import java.util.function.BiConsumer;
+
+/**
+ * 玩家凭据存储后端。所有认证逻辑只通过此接口读写凭据，
+ * 具体的持久化方式（JSON 快照加变更日志、内存映射文件等）由实现决定。
+ */
+public interface CredentialStore {
+
+    // 从磁盘加载已保存的凭据
+    void load();
+
+    boolean contains(UUID playerUuid);
+
+    // 返回玩家的凭据，不存在时返回 null
+    Credential get(UUID playerUuid);
+
+    void put(UUID playerUuid, Credential credential);
+
+    // 删除玩家的密码，返回之前是否存在
+    boolean remove(UUID playerUuid);
+
+    int size();
+
+    // 遍历全部凭据（用于后端之间的迁移）
+    void forEach(BiConsumer<UUID, Credential> action);
+
+    // 等待所有待写入的变更落盘，用于服务器停止时
+    void flush();
+
+    // flush 之后释放 IO 线程与文件句柄；集成服务器再次启动时，存储在下次写入时重新打开它们
+    void close();
+
+    // 变更刷盘调度器（用于读取队列深度等统计）
+    CredentialFlusher getFlusher();
+}
@@ -0,0 +1,309 @@
+package youraveragedev.safeserver.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import youraveragedev.safeserver.metrics.SafeserverMetrics;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+/**
+ * 基于嵌入式 H2 数据库文件的凭据存储，无需外部数据库服务。
+ * 凭据按 UUID 主键索引，只在查询时读取；变更经 {@link CredentialFlusher} 合并后
+ * 在 IO 线程上以一个事务批量写入。尚未落盘的变更保存在内存中的待写表里，读取时优先返回。
+ */
+public class H2CredentialStore implements CredentialStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger("safeserver-h2-store");
+
+    private static final String DRIVER_CLASS = "org.h2.Driver";
+    // 导入 JSON 时每批发送给数据库的条目数
+    private static final int MIGRATION_BATCH_SIZE = 1000;
+    // 记录已完成 JSON 导入的标记，与导入的数据在同一事务中写入
+    private static final String LEGACY_IMPORTED_KEY = "legacy_json_imported";
+
+    private static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS credentials ("
+            + "uuid UUID PRIMARY KEY, "
+            + "algorithm TINYINT NOT NULL, "
+            + "iterations INT NOT NULL, "
+            + "salt VARBINARY(" + Credential.MAX_SALT_LENGTH + ") NOT NULL, "
+            + "hash VARBINARY(" + Credential.HASH_LENGTH + ") NOT NULL)";
+    private static final String CREATE_INFO_TABLE = "CREATE TABLE IF NOT EXISTS store_info ("
+            + "name VARCHAR(64) PRIMARY KEY, "
+            + "info VARCHAR(1024) NOT NULL)";
+    private static final String SELECT_INFO = "SELECT info FROM store_info WHERE name = ?";
+    private static final String UPSERT_INFO = "MERGE INTO store_info (name, info) KEY (name) VALUES (?, ?)";
+    private static final String SELECT_ONE = "SELECT algorithm, iterations, salt, hash FROM credentials WHERE uuid = ?";
+    private static final String SELECT_ALL = "SELECT uuid, algorithm, iterations, salt, hash FROM credentials";
+    private static final String COUNT_ALL = "SELECT COUNT(*) FROM credentials";
+    private static final String UPSERT = "MERGE INTO credentials (uuid, algorithm, iterations, salt, hash) KEY (uuid) VALUES (?, ?, ?, ?, ?)";
+    private static final String DELETE = "DELETE FROM credentials WHERE uuid = ?";
+
+    // 估算写入字节数用：UUID、算法、迭代次数与盐、哈希的最大长度
+    private static final int ROW_SIZE = 16 + 1 + 4 + Credential.MAX_SALT_LENGTH + Credential.HASH_LENGTH;
+
+    private final Path databasePath;
+    private final Path legacyPasswordFilePath;
+    private final CredentialFlusher credentialFlusher;
+
+    // 尚未写入数据库的最新变更（删除以 credential 为 null 表示），写入成功后移除
+    private final Map<UUID, PasswordChange> unflushed = new ConcurrentHashMap<>();
+    private final AtomicInteger count = new AtomicInteger();
+
+    // 读连接由 readLock 串行使用，写连接只在 IO 线程使用
+    private final ReentrantLock readLock = new ReentrantLock();
+    private Connection readConnection;
+    private PreparedStatement selectOne;
+    private Connection writeConnection;
+
+    public H2CredentialStore(Path databasePath, Path legacyPasswordFilePath, long flushMaxDelayMillis) {
+        this.databasePath = databasePath;
+        this.legacyPasswordFilePath = legacyPasswordFilePath;
+        this.credentialFlusher = new CredentialFlusher(this::writeChanges, flushMaxDelayMillis);
+    }
+
+    @Override
+    public CredentialFlusher getFlusher() {
+        return credentialFlusher;
+    }
+
+    @Override
+    public void load() {
+        try {
+            Files.createDirectories(databasePath.toAbsolutePath().getParent());
+            Class.forName(DRIVER_CLASS, true, H2CredentialStore.class.getClassLoader());
+            String url = "jdbc:h2:file:" + databasePath.toAbsolutePath();
+            writeConnection = DriverManager.getConnection(url);
+            writeConnection.setAutoCommit(false);
+            try (Statement statement = writeConnection.createStatement()) {
+                statement.execute(CREATE_TABLE);
+                statement.execute(CREATE_INFO_TABLE);
+            }
+            writeConnection.commit();
+
+            readConnection = DriverManager.getConnection(url);
+            selectOne = readConnection.prepareStatement(SELECT_ONE);
+
+            if (!isLegacyStoreImported()) {
+                migrateFromLegacyStore();
+            }
+            try (Statement statement = readConnection.createStatement();
+                 ResultSet result = statement.executeQuery(COUNT_ALL)) {
+                result.next();
+                count.set(result.getInt(1));
+            }
+            LOGGER.info("已打开凭据数据库 {}（{} 条记录）。", databasePath, count.get());
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("未找到 H2 数据库驱动", e);
+        } catch (IOException | SQLException e) {
+            throw new IllegalStateException("无法打开凭据数据库 " + databasePath + "：" + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public boolean contains(UUID playerUuid) {
+        return get(playerUuid) != null;
+    }
+
+    @Override
+    public Credential get(UUID playerUuid) {
+        PasswordChange pending = unflushed.get(playerUuid);
+        if (pending != null) {
+            return pending.credential();
+        }
+        readLock.lock();
+        try {
+            selectOne.setObject(1, playerUuid);
+            try (ResultSet result = selectOne.executeQuery()) {
+                return result.next() ? readCredential(result, 1) : null;
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("查询凭据失败：" + e.getMessage(), e);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    // 写入需要先判断是否已存在以维护计数，同一时刻只处理一个写入
+    @Override
+    public synchronized void put(UUID playerUuid, Credential credential) {
+        if (get(playerUuid) == null) {
+            count.incrementAndGet();
+        }
+        PasswordChange change = new PasswordChange(playerUuid, credential);
+        unflushed.put(playerUuid, change);
+        credentialFlusher.submit(change);
+    }
+
+    @Override
+    public synchronized boolean remove(UUID playerUuid) {
+        if (get(playerUuid) == null) {
+            return false;
+        }
+        count.decrementAndGet();
+        PasswordChange change = new PasswordChange(playerUuid, null);
+        unflushed.put(playerUuid, change);
+        credentialFlusher.submit(change);
+        return true;
+    }
+
+    @Override
+    public int size() {
+        return count.get();
+    }
+
+    // 流式遍历数据库中的凭据，待写表中的条目以待写的值为准
+    @Override
+    public void forEach(BiConsumer<UUID, Credential> action) {
+        Map<UUID, PasswordChange> pending = Map.copyOf(unflushed);
+        readLock.lock();
+        try (Statement statement = readConnection.createStatement();
+             ResultSet result = statement.executeQuery(SELECT_ALL)) {
+            while (result.next()) {
+                UUID playerUuid = result.getObject(1, UUID.class);
+                if (!pending.containsKey(playerUuid)) {
+                    action.accept(playerUuid, readCredential(result, 2));
+                }
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("遍历凭据失败：" + e.getMessage(), e);
+        } finally {
+            readLock.unlock();
+        }
+        pending.forEach((playerUuid, change) -> {
+            if (!change.isRemoval()) {
+                action.accept(playerUuid, change.credential());
+            }
+        });
+    }
+
+    @Override
+    public void flush() {
+        credentialFlusher.drain();
+    }
+
+    @Override
+    public void close() {
+        credentialFlusher.close();
+    }
+
+    // IO 线程：同一玩家的多次变更只保留最后一次，整批在一个事务内提交
+    private void writeChanges(List<PasswordChange> changes) throws IOException {
+        Map<UUID, PasswordChange> latest = new LinkedHashMap<>();
+        for (PasswordChange change : changes) {
+            latest.put(change.playerUuid(), change);
+        }
+
+        try (PreparedStatement upsert = writeConnection.prepareStatement(UPSERT);
+             PreparedStatement delete = writeConnection.prepareStatement(DELETE)) {
+            for (PasswordChange change : latest.values()) {
+                if (change.isRemoval()) {
+                    delete.setObject(1, change.playerUuid());
+                    delete.addBatch();
+                } else {
+                    bindUpsert(upsert, change.playerUuid(), change.credential());
+                    upsert.addBatch();
+                }
+            }
+            upsert.executeBatch();
+            delete.executeBatch();
+            writeConnection.commit();
+        } catch (SQLException e) {
+            rollbackQuietly();
+            throw new IOException("写入凭据数据库失败：" + e.getMessage(), e);
+        }
+
+        // 只移除已写入的那次变更，期间又提交的新变更继续留在待写表中
+        for (PasswordChange change : latest.values()) {
+            unflushed.remove(change.playerUuid(), change);
+        }
+        SafeserverMetrics.BYTES_WRITTEN.add((long) latest.size() * ROW_SIZE);
+    }
+
+    private boolean isLegacyStoreImported() throws SQLException {
+        try (PreparedStatement select = writeConnection.prepareStatement(SELECT_INFO)) {
+            select.setString(1, LEGACY_IMPORTED_KEY);
+            try (ResultSet result = select.executeQuery()) {
+                return result.next();
+            }
+        }
+    }
+
+    // 首次启用时从 JSON 存储导入现有密码；整个导入与完成标记在同一事务中提交，中途失败时下次启动重新导入
+    private void migrateFromLegacyStore() throws SQLException {
+        UuidCredentialMap legacyCredentials = JournaledCredentialStore.readAll(legacyPasswordFilePath);
+
+        int[] imported = new int[1];
+        try (PreparedStatement upsert = writeConnection.prepareStatement(UPSERT);
+             PreparedStatement marker = writeConnection.prepareStatement(UPSERT_INFO)) {
+            try {
+                legacyCredentials.forEach((playerUuid, credential) -> {
+                    try {
+                        bindUpsert(upsert, playerUuid, credential);
+                        upsert.addBatch();
+                        if (++imported[0] % MIGRATION_BATCH_SIZE == 0) {
+                            upsert.executeBatch();
+                        }
+                    } catch (SQLException e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+            } catch (IllegalStateException e) {
+                if (e.getCause() instanceof SQLException sqlException) {
+                    throw sqlException;
+                }
+                throw e;
+            }
+            upsert.executeBatch();
+            marker.setString(1, LEGACY_IMPORTED_KEY);
+            marker.setString(2, legacyPasswordFilePath.toString());
+            marker.executeUpdate();
+            writeConnection.commit();
+        } catch (SQLException e) {
+            rollbackQuietly();
+            throw e;
+        }
+
+        if (imported[0] > 0) {
+            LOGGER.info("已将 {} 条密码从 {} 导入凭据数据库 {}。", imported[0], legacyPasswordFilePath, databasePath);
+        } else {
+            LOGGER.info("已创建新的凭据数据库 {}。", databasePath);
+        }
+    }
+
+    private void rollbackQuietly() {
+        try {
+            writeConnection.rollback();
+        } catch (SQLException e) {
+            LOGGER.warn("回滚凭据数据库事务失败：{}", e.getMessage());
+        }
+    }
+
+    private static void bindUpsert(PreparedStatement upsert, UUID playerUuid, Credential credential) throws SQLException {
+        upsert.setObject(1, playerUuid);
+        upsert.setByte(2, credential.algorithm());
+        upsert.setInt(3, credential.iterations());
+        upsert.setBytes(4, credential.salt());
+        upsert.setBytes(5, credential.hash());
+    }
+
+    private static Credential readCredential(ResultSet result, int firstColumn) throws SQLException {
+        return Credential.of(result.getByte(firstColumn), result.getInt(firstColumn + 1),
+                result.getBytes(firstColumn + 2), result.getBytes(firstColumn + 3));
+    }
+}
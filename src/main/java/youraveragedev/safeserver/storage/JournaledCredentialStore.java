@@ -0,0 +1,366 @@
+package youraveragedev.safeserver.storage;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import youraveragedev.safeserver.SafeserverConstants;
+import youraveragedev.safeserver.metrics.SafeserverMetrics;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * 基于 JSON 快照加追加式变更日志的凭据存储（默认后端）。
+ * 全部凭据常驻内存，变更经 {@link CredentialFlusher} 合并后追加到 passwords.journal，
+ * 日志超过阈值后在 IO 线程压缩为新的 passwords.json 快照。
+ */
+public class JournaledCredentialStore implements CredentialStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger("safeserver-storage");
+
+    // 快照中单个条目的最小字节数（旧版无盐 SHA-256 条目），用于按文件大小预估条目数
+    private static final int MIN_SNAPSHOT_ENTRY_BYTES = 100;
+
+    // 密码存储（线程安全，以 UUID 的 long 分量为键）
+    private final UuidCredentialMap playerPasswords = new UuidCredentialMap();
+
+    private final Path passwordFilePath;
+    private final PasswordJournal passwordJournal;
+    private final CredentialFlusher credentialFlusher;
+
+    // 自上次写出快照以来由模组修改过的玩家及其变更序号，外部修改的快照中没有这些变更，重新加载时跳过
+    private final Map<UUID, Long> changedSinceSnapshot = new ConcurrentHashMap<>();
+    private final AtomicLong changeSequence = new AtomicLong();
+    // 保护内存表修改与变更标记的一致性，重新加载外部修改时与 put/remove 互斥
+    private final Object mutationLock = new Object();
+
+    // 外部修改监视（可选）
+    private CredentialFileWatcher fileWatcher;
+
+    public JournaledCredentialStore(Path passwordFilePath, long flushMaxDelayMillis) {
+        this.passwordFilePath = passwordFilePath;
+        this.passwordJournal = new PasswordJournal(journalPathFor(passwordFilePath));
+        this.credentialFlusher = new CredentialFlusher(this::writePasswordChanges, flushMaxDelayMillis);
+    }
+
+    // 在 load() 完成后开始监视密码文件的外部修改，quietMillis 为文件静默多久后才重新加载
+    public void enableHotReload(long quietMillis) {
+        fileWatcher = new CredentialFileWatcher(passwordFilePath, quietMillis, this::reloadExternalChanges);
+    }
+
+    @Override
+    public CredentialFlusher getFlusher() {
+        return credentialFlusher;
+    }
+
+    // 从快照和变更日志加载密码
+    @Override
+    public void load() {
+        if (Files.exists(passwordFilePath)) {
+            playerPasswords.ensureCapacity(estimateSnapshotEntries(passwordFilePath));
+            try {
+                int loaded = readSnapshot(passwordFilePath, playerPasswords::put);
+                LOGGER.info("已从 {} 成功加载 {} 个密码。", passwordFilePath, loaded);
+            } catch (EOFException e) {
+                LOGGER.warn("密码文件 {} 为空或不完整，已加载 {} 个密码。", passwordFilePath, playerPasswords.size());
+            } catch (IOException | IllegalStateException e) {
+                LOGGER.error("加载密码文件 {} 失败：{}", passwordFilePath, e.getMessage());
+            }
+        } else {
+            LOGGER.info("未找到密码文件 {}，首次保存时将自动创建。", passwordFilePath);
+        }
+
+        // 在快照之上重放变更日志
+        try {
+            // 日志中的变更不在快照里，与运行期的修改同样视为尚未写入快照
+            int replayed = passwordJournal.replay(playerPasswords, this::markChanged);
+            if (replayed > 0) {
+                LOGGER.info("已从 {} 重放 {} 条密码变更记录。", passwordJournal.getPath(), replayed);
+            }
+            if (passwordJournal.size() >= SafeserverConstants.JOURNAL_COMPACTION_THRESHOLD_BYTES) {
+                credentialFlusher.execute(this::compactJournal);
+            }
+        } catch (IOException e) {
+            LOGGER.error("重放密码变更日志 {} 失败：{}", passwordJournal.getPath(), e.getMessage());
+        }
+
+        if (fileWatcher != null) {
+            try {
+                if (Files.exists(passwordFilePath)) {
+                    fileWatcher.markKnown(CredentialFileWatcher.FileStamp.of(passwordFilePath));
+                }
+                fileWatcher.start();
+            } catch (IOException e) {
+                LOGGER.error("无法监视密码文件 {}：{}", passwordFilePath, e.getMessage());
+            }
+        }
+    }
+
+    // 只读地读取 JSON 存储（快照加变更日志）中的全部凭据，供其他后端首次启用时导入；不创建刷盘调度器与 IO 线程
+    public static UuidCredentialMap readAll(Path passwordFilePath) {
+        UuidCredentialMap credentials = new UuidCredentialMap();
+        if (Files.exists(passwordFilePath)) {
+            credentials.ensureCapacity(estimateSnapshotEntries(passwordFilePath));
+            try {
+                readSnapshot(passwordFilePath, credentials::put);
+            } catch (EOFException e) {
+                LOGGER.warn("密码文件 {} 为空或不完整，已读取 {} 个密码。", passwordFilePath, credentials.size());
+            } catch (IOException | IllegalStateException e) {
+                LOGGER.error("读取密码文件 {} 失败：{}", passwordFilePath, e.getMessage());
+            }
+        }
+        PasswordJournal journal = new PasswordJournal(journalPathFor(passwordFilePath));
+        try {
+            journal.replay(credentials, playerUuid -> {
+            });
+        } catch (IOException e) {
+            LOGGER.error("重放密码变更日志 {} 失败：{}", journal.getPath(), e.getMessage());
+        }
+        return credentials;
+    }
+
+    @Override
+    public boolean contains(UUID playerUuid) {
+        return playerPasswords.containsKey(playerUuid);
+    }
+
+    @Override
+    public Credential get(UUID playerUuid) {
+        return playerPasswords.get(playerUuid);
+    }
+
+    @Override
+    public void put(UUID playerUuid, Credential credential) {
+        synchronized (mutationLock) {
+            markChanged(playerUuid);
+            playerPasswords.put(playerUuid, credential);
+        }
+        credentialFlusher.submit(new PasswordChange(playerUuid, credential));
+    }
+
+    @Override
+    public boolean remove(UUID playerUuid) {
+        synchronized (mutationLock) {
+            if (playerPasswords.remove(playerUuid) == null) {
+                return false;
+            }
+            markChanged(playerUuid);
+        }
+        credentialFlusher.submit(new PasswordChange(playerUuid, null));
+        return true;
+    }
+
+    @Override
+    public int size() {
+        return playerPasswords.size();
+    }
+
+    @Override
+    public void forEach(BiConsumer<UUID, Credential> action) {
+        playerPasswords.forEach(action);
+    }
+
+    @Override
+    public void flush() {
+        credentialFlusher.drain();
+    }
+
+    // 日志通道只在 IO 线程上使用，在 IO 线程上关闭后再停止该线程
+    @Override
+    public void close() {
+        credentialFlusher.execute(passwordJournal::close);
+        credentialFlusher.close();
+    }
+
+    // 刷盘调度器的写入目标（在文件 IO 线程执行）
+    private void writePasswordChanges(List<PasswordChange> changes) throws IOException {
+        passwordJournal.appendAll(changes);
+        if (passwordJournal.size() >= SafeserverConstants.JOURNAL_COMPACTION_THRESHOLD_BYTES) {
+            compactJournal();
+        }
+    }
+
+    // 将当前密码表写为新快照并清空变更日志（仅在文件 IO 线程执行）
+    private void compactJournal() {
+        // 序号不大于此值的变更都已写入内存表，因此会包含在接下来写出的快照中
+        long coveredSequence;
+        synchronized (mutationLock) {
+            coveredSequence = changeSequence.get();
+        }
+        if (!savePasswordsSync()) {
+            return;
+        }
+        try {
+            passwordJournal.truncate();
+            changedSinceSnapshot.values().removeIf(sequence -> sequence <= coveredSequence);
+            LOGGER.info("已将密码变更日志压缩为快照 {}", passwordFilePath);
+        } catch (IOException e) {
+            LOGGER.error("清空密码变更日志 {} 失败：{}", passwordJournal.getPath(), e.getMessage());
+        }
+    }
+
+    // 包级可见供基准测试直接测量完整快照写入
+    boolean savePasswordsSync() {
+        Path tempFilePath = passwordFilePath.resolveSibling(passwordFilePath.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(passwordFilePath.getParent());
+        } catch (IOException e) {
+            LOGGER.error("创建密码文件目录 {} 失败：{}", passwordFilePath.getParent(), e.getMessage());
+            return false;
+        }
+        try {
+            // 写入临时文件并 fsync，再原子替换，任何时刻磁盘上都是完整的快照
+            try (FileChannel channel = FileChannel.open(tempFilePath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                Writer writer = Channels.newWriter(channel, StandardCharsets.UTF_8);
+                writeSnapshot(writer);
+                writer.flush();
+                channel.force(true);
+            }
+            SafeserverMetrics.BYTES_WRITTEN.add(Files.size(tempFilePath));
+            // 重命名保留修改时间，先登记为已知版本，监视线程不会把自己写出的快照当作外部修改
+            if (fileWatcher != null) {
+                fileWatcher.markKnown(CredentialFileWatcher.FileStamp.of(tempFilePath));
+            }
+            Files.move(tempFilePath, passwordFilePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            syncDirectory(passwordFilePath.getParent());
+            LOGGER.info("已成功将密码保存至 {}", passwordFilePath);
+            return true;
+        } catch (IOException e) {
+            LOGGER.error("写入密码文件 {} 失败：{}", passwordFilePath, e.getMessage());
+            return false;
+        }
+    }
+
+    // 监视线程：解析外部修改后的快照并与内存表比较，只在一次写锁内应用有差异的条目
+    private void reloadExternalChanges(CredentialFileWatcher.FileStamp stamp) {
+        long start = System.nanoTime();
+        Map<UUID, Credential> fileEntries = new HashMap<>();
+        try {
+            readSnapshot(passwordFilePath, fileEntries::put);
+        } catch (IOException | IllegalStateException e) {
+            // 通常是外部工具尚未写完，写完后的修改事件会再次触发
+            LOGGER.warn("密码文件 {} 已被外部修改，但暂时无法解析：{}", passwordFilePath, e.getMessage());
+            return;
+        }
+
+        Map<UUID, Credential> differences = new HashMap<>();
+        fileEntries.forEach((playerUuid, credential) -> {
+            if (!credential.equals(playerPasswords.get(playerUuid))) {
+                differences.put(playerUuid, credential);
+            }
+        });
+        playerPasswords.forEach((playerUuid, credential) -> {
+            if (!fileEntries.containsKey(playerUuid)) {
+                differences.put(playerUuid, null);
+            }
+        });
+
+        List<PasswordChange> applied = new ArrayList<>(differences.size());
+        int skipped = 0;
+        synchronized (mutationLock) {
+            for (Map.Entry<UUID, Credential> difference : differences.entrySet()) {
+                if (changedSinceSnapshot.containsKey(difference.getKey())) {
+                    skipped++;
+                    continue;
+                }
+                applied.add(new PasswordChange(difference.getKey(), difference.getValue()));
+            }
+            playerPasswords.applyAll(applied);
+        }
+        // 写入变更日志，使重启时在新快照之上的重放结果与当前内存表一致
+        for (PasswordChange change : applied) {
+            credentialFlusher.submit(change);
+        }
+        fileWatcher.markKnown(stamp);
+
+        long removed = applied.stream().filter(PasswordChange::isRemoval).count();
+        LOGGER.info("已重新加载外部修改的密码文件 {}：更新 {} 个、删除 {} 个，跳过 {} 个尚未写入快照的本地变更，用时 {} 毫秒。",
+                passwordFilePath, applied.size() - removed, removed, skipped, (System.nanoTime() - start) / 1_000_000L);
+    }
+
+    private void markChanged(UUID playerUuid) {
+        changedSinceSnapshot.put(playerUuid, changeSequence.incrementAndGet());
+    }
+
+    private static Path journalPathFor(Path passwordFilePath) {
+        return passwordFilePath.resolveSibling("passwords.journal");
+    }
+
+    private static int estimateSnapshotEntries(Path passwordFilePath) {
+        try {
+            return (int) Math.min(Integer.MAX_VALUE / 4, Files.size(passwordFilePath) / MIN_SNAPSHOT_ENTRY_BYTES);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    // 流式读取快照，条目直接交给 sink（加载时为预先扩容的凭据表），不生成中间字符串表；文件为空或不完整时抛出 EOFException
+    private static int readSnapshot(Path passwordFilePath, BiConsumer<UUID, Credential> sink) throws IOException {
+        int loaded = 0;
+        try (JsonReader json = new JsonReader(Files.newBufferedReader(passwordFilePath, StandardCharsets.UTF_8))) {
+            if (json.peek() == JsonToken.NULL) {
+                throw new EOFException("密码文件内容为 null");
+            }
+            json.beginObject();
+            while (json.hasNext()) {
+                // UUID 字符串与存储格式只在此处转换
+                String key = json.nextName();
+                String value = json.nextString();
+                try {
+                    sink.accept(UUID.fromString(key), Credential.fromStorageString(value));
+                    loaded++;
+                } catch (IllegalArgumentException e) {
+                    LOGGER.warn("跳过密码文件中的无效条目：{}", key);
+                }
+            }
+            json.endObject();
+        }
+        return loaded;
+    }
+
+    // 以流式方式写出快照，格式与旧版 passwords.json 保持一致
+    private void writeSnapshot(Writer writer) throws IOException {
+        JsonWriter json = new JsonWriter(writer);
+        json.setIndent("  ");
+        json.beginObject();
+        try {
+            playerPasswords.forEach((playerUuid, credential) -> {
+                try {
+                    json.name(playerUuid.toString()).value(credential.toStorageString());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        json.endObject();
+        json.flush();
+    }
+
+    // 对目录执行 fsync 以持久化重命名操作（部分平台不支持，忽略失败）
+    private static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ignored) {
+        }
+    }
+}
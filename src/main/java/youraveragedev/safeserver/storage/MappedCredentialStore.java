@@ -0,0 +1,518 @@
+package youraveragedev.safeserver.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import youraveragedev.safeserver.metrics.SafeserverMetrics;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+
+/**
+ * 基于内存映射文件的二进制凭据存储。
+ * 文件由固定大小的记录组成（16 字节 UUID、算法与盐的头部、原始哈希字节），
+ * 以开放寻址（线性探测）方式组织，负载因子不超过 1/2，加入时通常一次探测即可命中。
+ * 凭据不占用堆内存，启动时只需映射文件；写入直接落在页缓存中，并由 {@link CredentialFlusher} 合并执行 force。
+ * 扩容与解除映射只在 IO 线程上进行，与 force 串行，因此 force 可以在锁外执行。
+ */
+public class MappedCredentialStore implements CredentialStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger("safeserver-mapped-store");
+
+    // 文件头
+    private static final long MAGIC = 0x5353435245443031L; // "SSCRED01"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 8;
+    private static final int CAPACITY_OFFSET = 12;
+    private static final int COUNT_OFFSET = 16;
+    private static final int TOMBSTONE_OFFSET = 20;
+
+    // 记录布局
+    private static final int SLOT_SIZE = 72;
+    private static final int MSB_OFFSET = 0;
+    private static final int LSB_OFFSET = 8;
+    private static final int STATE_OFFSET = 16;
+    private static final int ALGORITHM_OFFSET = 17;
+    private static final int SALT_LENGTH_OFFSET = 18;
+    private static final int HASH_LENGTH_OFFSET = 19;
+    private static final int ITERATIONS_OFFSET = 20;
+    private static final int SALT_OFFSET = 24;
+    private static final int HASH_OFFSET = 40;
+    private static final int SALT_CAPACITY = 16;
+    private static final int HASH_CAPACITY = 32;
+
+    private static final byte SLOT_EMPTY = 0;
+    private static final byte SLOT_OCCUPIED = 1;
+    private static final byte SLOT_DELETED = 2;
+
+    private static final int INITIAL_CAPACITY = 1024;
+    // 保证映射区域不超过 2GB
+    private static final int MAX_CAPACITY = 1 << 24;
+    // 扩容时每次持有读锁复制的槽位数
+    private static final int REBUILD_CHUNK_SLOTS = 4096;
+
+    private final Path storePath;
+    private final Path legacyPasswordFilePath;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // 扩容完成（或失败）时通知等待空位的写入方
+    private final Condition rebuildFinished = lock.writeLock().newCondition();
+    private final AtomicBoolean rebuildScheduled = new AtomicBoolean();
+    private final CredentialFlusher credentialFlusher;
+
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private int count;
+    private int tombstones;
+    // 扩容期间的写入，复制完成后补到新表中；不在扩容时为 null（以下两个字段由写锁保护）
+    private List<PasswordChange> changesDuringRebuild;
+    private IOException rebuildFailure;
+
+    public MappedCredentialStore(Path storePath, Path legacyPasswordFilePath, long flushMaxDelayMillis) {
+        this.storePath = storePath;
+        this.legacyPasswordFilePath = legacyPasswordFilePath;
+        this.credentialFlusher = new CredentialFlusher(changes -> {
+            forceBuffer();
+            // 实际落盘以页为单位，这里按变更涉及的记录大小统计
+            SafeserverMetrics.BYTES_WRITTEN.add((long) changes.size() * SLOT_SIZE);
+        }, flushMaxDelayMillis);
+    }
+
+    @Override
+    public CredentialFlusher getFlusher() {
+        return credentialFlusher;
+    }
+
+    @Override
+    public void load() {
+        lock.writeLock().lock();
+        try {
+            if (Files.exists(storePath)) {
+                openExisting();
+                LOGGER.info("已映射凭据文件 {}（{} 条记录，容量 {}）。", storePath, count, capacity);
+            } else {
+                migrateFromLegacyStore();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("无法打开凭据文件 " + storePath, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean contains(UUID playerUuid) {
+        lock.readLock().lock();
+        try {
+            return findSlot(buffer, capacity, playerUuid.getMostSignificantBits(), playerUuid.getLeastSignificantBits()) >= 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Credential get(UUID playerUuid) {
+        lock.readLock().lock();
+        try {
+            int slot = findSlot(buffer, capacity, playerUuid.getMostSignificantBits(), playerUuid.getLeastSignificantBits());
+            if (slot < 0) {
+                return null;
+            }
+            return readCredential(buffer, slotOffset(slot));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void put(UUID playerUuid, Credential credential) {
+        long msb = playerUuid.getMostSignificantBits();
+        long lsb = playerUuid.getLeastSignificantBits();
+
+        PasswordChange change = new PasswordChange(playerUuid, credential);
+        lock.writeLock().lock();
+        try {
+            awaitFreeSlot();
+            int slot = findSlot(buffer, capacity, msb, lsb);
+            if (slot < 0) {
+                slot = -slot - 1;
+                if (buffer.get(slotOffset(slot) + STATE_OFFSET) == SLOT_DELETED) {
+                    tombstones--;
+                }
+                count++;
+            }
+            writeSlot(buffer, slot, msb, lsb, credential);
+            writeCounters();
+            recordChange(change);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        credentialFlusher.submit(change);
+    }
+
+    @Override
+    public boolean remove(UUID playerUuid) {
+        lock.writeLock().lock();
+        try {
+            int slot = findSlot(buffer, capacity, playerUuid.getMostSignificantBits(), playerUuid.getLeastSignificantBits());
+            if (slot < 0) {
+                return false;
+            }
+            buffer.put(slotOffset(slot) + STATE_OFFSET, SLOT_DELETED);
+            count--;
+            tombstones++;
+            writeCounters();
+            recordChange(new PasswordChange(playerUuid, null));
+        } finally {
+            lock.writeLock().unlock();
+        }
+        credentialFlusher.submit(new PasswordChange(playerUuid, null));
+        return true;
+    }
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void forEach(BiConsumer<UUID, Credential> action) {
+        lock.readLock().lock();
+        try {
+            for (int slot = 0; slot < capacity; slot++) {
+                int base = slotOffset(slot);
+                if (buffer.get(base + STATE_OFFSET) != SLOT_OCCUPIED) {
+                    continue;
+                }
+                action.accept(new UUID(buffer.getLong(base + MSB_OFFSET), buffer.getLong(base + LSB_OFFSET)), readCredential(buffer, base));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void flush() {
+        credentialFlusher.drain();
+    }
+
+    @Override
+    public void close() {
+        credentialFlusher.close();
+    }
+
+    private void openExisting() throws IOException {
+        channel = FileChannel.open(storePath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        if (buffer.getLong(MAGIC_OFFSET) != MAGIC || buffer.getInt(VERSION_OFFSET) != VERSION) {
+            throw new IOException("凭据文件格式无法识别");
+        }
+        capacity = buffer.getInt(CAPACITY_OFFSET);
+        count = buffer.getInt(COUNT_OFFSET);
+        tombstones = buffer.getInt(TOMBSTONE_OFFSET);
+        if (Integer.bitCount(capacity) != 1 || channel.size() < HEADER_SIZE + (long) capacity * SLOT_SIZE) {
+            throw new IOException("凭据文件头已损坏");
+        }
+    }
+
+    // 首次启用时从 JSON 存储导入现有密码
+    private void migrateFromLegacyStore() throws IOException {
+        UuidCredentialMap legacyCredentials = JournaledCredentialStore.readAll(legacyPasswordFilePath);
+        int initialCapacity = capacityFor(legacyCredentials.size());
+
+        Files.createDirectories(storePath.getParent());
+        channel = createTable(storePath, initialCapacity);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        capacity = initialCapacity;
+        count = 0;
+        tombstones = 0;
+
+        if (legacyCredentials.size() > 0) {
+            legacyCredentials.forEach((playerUuid, credential) -> {
+                long msb = playerUuid.getMostSignificantBits();
+                long lsb = playerUuid.getLeastSignificantBits();
+                int slot = findSlot(buffer, capacity, msb, lsb);
+                if (slot < 0) {
+                    writeSlot(buffer, -slot - 1, msb, lsb, credential);
+                    count++;
+                }
+            });
+            writeCounters();
+            buffer.force();
+            LOGGER.info("已将 {} 条密码从 {} 导入凭据文件 {}。", count, legacyPasswordFilePath, storePath);
+        } else {
+            LOGGER.info("已创建新的凭据文件 {}。", storePath);
+        }
+    }
+
+    // 以下三个方法由调用方持有写锁
+
+    // 负载因子超过 1/2 时安排在 IO 线程上扩容；扩容期间的写入记录下来，复制完成后补到新表中
+    private void recordChange(PasswordChange change) {
+        if (changesDuringRebuild != null) {
+            changesDuringRebuild.add(change);
+        }
+        if ((long) (count + tombstones) * 2 > capacity) {
+            scheduleRebuild();
+        }
+    }
+
+    // 通常扩容早已在 IO 线程上完成；只有表已装满 3/4 而扩容仍未完成时，写入方才等待
+    private void awaitFreeSlot() {
+        while ((long) (count + tombstones + 1) * 4 > (long) capacity * 3) {
+            scheduleRebuild();
+            rebuildFinished.awaitUninterruptibly();
+            if (rebuildFailure != null) {
+                throw new UncheckedIOException("无法扩容凭据文件 " + storePath, rebuildFailure);
+            }
+        }
+    }
+
+    private void scheduleRebuild() {
+        if (rebuildScheduled.compareAndSet(false, true)) {
+            rebuildFailure = null;
+            credentialFlusher.execute(this::rebuild);
+        }
+    }
+
+    // IO 线程：重建为两倍容量（先写临时文件，再原子替换）。
+    // 现有记录分块在读锁下复制，服务器线程的读写只在每块之间与最后替换文件时等待
+    private void rebuild() {
+        Path tempPath = storePath.resolveSibling(storePath.getFileName() + ".tmp");
+        int oldCapacity;
+        int newCapacity;
+        lock.writeLock().lock();
+        try {
+            oldCapacity = capacity;
+            newCapacity = capacityFor(count + 1);
+            changesDuringRebuild = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        FileChannel newChannel = null;
+        MappedByteBuffer newBuffer = null;
+        try {
+            if (newCapacity > MAX_CAPACITY) {
+                throw new IOException("凭据文件已达到最大容量");
+            }
+            newChannel = createTable(tempPath, newCapacity);
+            newBuffer = newChannel.map(FileChannel.MapMode.READ_WRITE, 0, newChannel.size());
+            int newCount = 0;
+            for (int start = 0; start < oldCapacity; start += REBUILD_CHUNK_SLOTS) {
+                lock.readLock().lock();
+                try {
+                    int end = Math.min(oldCapacity, start + REBUILD_CHUNK_SLOTS);
+                    for (int slot = start; slot < end; slot++) {
+                        int base = slotOffset(slot);
+                        if (buffer.get(base + STATE_OFFSET) != SLOT_OCCUPIED) {
+                            continue;
+                        }
+                        // 块之间的写入可能使同一个键出现在两个块中，以后复制到的为准，补写时再修正
+                        int target = findSlot(newBuffer, newCapacity, buffer.getLong(base + MSB_OFFSET), buffer.getLong(base + LSB_OFFSET));
+                        if (target < 0) {
+                            target = -target - 1;
+                            newCount++;
+                        }
+                        newBuffer.put(slotOffset(target), buffer, base, SLOT_SIZE);
+                    }
+                } finally {
+                    lock.readLock().unlock();
+                }
+            }
+            newBuffer.force();
+
+            lock.writeLock().lock();
+            try {
+                int newTombstones = 0;
+                for (PasswordChange change : changesDuringRebuild) {
+                    long msb = change.playerUuid().getMostSignificantBits();
+                    long lsb = change.playerUuid().getLeastSignificantBits();
+                    int slot = findSlot(newBuffer, newCapacity, msb, lsb);
+                    if (change.isRemoval()) {
+                        if (slot >= 0) {
+                            newBuffer.put(slotOffset(slot) + STATE_OFFSET, SLOT_DELETED);
+                            newCount--;
+                            newTombstones++;
+                        }
+                        continue;
+                    }
+                    if (slot < 0) {
+                        slot = -slot - 1;
+                        if (newBuffer.get(slotOffset(slot) + STATE_OFFSET) == SLOT_DELETED) {
+                            newTombstones--;
+                        }
+                        newCount++;
+                    }
+                    writeSlot(newBuffer, slot, msb, lsb, change.credential());
+                }
+                changesDuringRebuild = null;
+                newBuffer.putInt(COUNT_OFFSET, newCount);
+                newBuffer.putInt(TOMBSTONE_OFFSET, newTombstones);
+                newBuffer.force();
+                newChannel.close();
+                unmap(newBuffer);
+                newBuffer = null;
+
+                // 文件仍被映射时 Windows 不允许替换：先释放旧文件的通道与映射，替换后重新映射（失败时重新映射旧文件）
+                channel.close();
+                unmap(buffer);
+                buffer = null;
+                try {
+                    Files.move(tempPath, storePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } finally {
+                    openExisting();
+                }
+                rebuildScheduled.set(false);
+                rebuildFinished.signalAll();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            LOGGER.info("凭据文件 {} 已扩容至 {} 个槽位。", storePath, newCapacity);
+        } catch (IOException e) {
+            LOGGER.error("扩容凭据文件 {} 失败：{}", storePath, e.getMessage());
+            if (newBuffer != null) {
+                unmap(newBuffer);
+            }
+            try {
+                if (newChannel != null) {
+                    newChannel.close();
+                }
+                Files.deleteIfExists(tempPath);
+            } catch (IOException ignored) {
+            }
+            lock.writeLock().lock();
+            try {
+                changesDuringRebuild = null;
+                rebuildFailure = e;
+                rebuildScheduled.set(false);
+                rebuildFinished.signalAll();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    // 立即解除映射，不等待 GC 回收缓冲区；调用方须保证之后不再访问该缓冲区。JDK 不提供时只能交给 GC
+    private static void unmap(MappedByteBuffer mapped) {
+        try {
+            Field unsafeField = Class.forName("sun.misc.Unsafe").getDeclaredField("theUnsafe");
+            unsafeField.setAccessible(true);
+            Object unsafe = unsafeField.get(null);
+            unsafe.getClass().getMethod("invokeCleaner", ByteBuffer.class).invoke(unsafe, mapped);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOGGER.debug("无法立即解除内存映射：{}", e.toString());
+        }
+    }
+
+    // 在读锁下取得当前映射，在锁外 force，msync 期间不阻塞服务器线程的写入。
+    // 映射只在 IO 线程上的 rebuild 中解除，与刷盘串行，因此 force 期间映射不会失效
+    private void forceBuffer() {
+        MappedByteBuffer current;
+        lock.readLock().lock();
+        try {
+            current = buffer;
+        } finally {
+            lock.readLock().unlock();
+        }
+        current.force();
+    }
+
+    private void writeCounters() {
+        buffer.putInt(COUNT_OFFSET, count);
+        buffer.putInt(TOMBSTONE_OFFSET, tombstones);
+    }
+
+    private static FileChannel createTable(Path path, int tableCapacity) throws IOException {
+        FileChannel newChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        MappedByteBuffer header = newChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) tableCapacity * SLOT_SIZE);
+        header.putLong(MAGIC_OFFSET, MAGIC);
+        header.putInt(VERSION_OFFSET, VERSION);
+        header.putInt(CAPACITY_OFFSET, tableCapacity);
+        return newChannel;
+    }
+
+    // 返回键所在槽位；不存在时返回 -(可插入槽位 + 1)
+    private static int findSlot(MappedByteBuffer table, int tableCapacity, long msb, long lsb) {
+        int mask = tableCapacity - 1;
+        int index = mix(msb, lsb) & mask;
+        int firstDeleted = -1;
+        for (int probes = 0; probes < tableCapacity; probes++) {
+            int base = slotOffset(index);
+            byte state = table.get(base + STATE_OFFSET);
+            if (state == SLOT_EMPTY) {
+                return -(firstDeleted >= 0 ? firstDeleted : index) - 1;
+            }
+            if (state == SLOT_OCCUPIED && table.getLong(base + MSB_OFFSET) == msb && table.getLong(base + LSB_OFFSET) == lsb) {
+                return index;
+            }
+            if (state == SLOT_DELETED && firstDeleted < 0) {
+                firstDeleted = index;
+            }
+            index = (index + 1) & mask;
+        }
+        return -firstDeleted - 1;
+    }
+
+    // 先写入记录内容，最后写状态字节
+    private static void writeSlot(MappedByteBuffer table, int slot, long msb, long lsb, Credential credential) {
+        byte[] hash = credential.hash();
+        if (hash.length > HASH_CAPACITY || credential.salt().length > SALT_CAPACITY) {
+            throw new IllegalArgumentException("哈希长度超出记录容量");
+        }
+        int base = slotOffset(slot);
+        table.putLong(base + MSB_OFFSET, msb);
+        table.putLong(base + LSB_OFFSET, lsb);
+        byte[] salt = credential.salt();
+        table.put(base + ALGORITHM_OFFSET, credential.algorithm());
+        table.put(base + SALT_LENGTH_OFFSET, (byte) salt.length);
+        table.put(base + HASH_LENGTH_OFFSET, (byte) hash.length);
+        table.putInt(base + ITERATIONS_OFFSET, credential.iterations());
+        table.put(base + SALT_OFFSET, salt);
+        table.put(base + HASH_OFFSET, hash);
+        table.put(base + STATE_OFFSET, SLOT_OCCUPIED);
+    }
+
+    private static Credential readCredential(MappedByteBuffer table, int base) {
+        byte[] salt = new byte[table.get(base + SALT_LENGTH_OFFSET)];
+        table.get(base + SALT_OFFSET, salt);
+        byte[] hash = new byte[table.get(base + HASH_LENGTH_OFFSET)];
+        table.get(base + HASH_OFFSET, hash);
+        return Credential.of(table.get(base + ALGORITHM_OFFSET), table.getInt(base + ITERATIONS_OFFSET), salt, hash);
+    }
+
+    private static int slotOffset(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private static int capacityFor(int entries) {
+        int required = Math.max(INITIAL_CAPACITY, entries * 2);
+        return Integer.highestOneBit(required - 1) << 1;
+    }
+
+    private static int mix(long msb, long lsb) {
+        return UuidCredentialMap.mix(msb, lsb);
+    }
+}
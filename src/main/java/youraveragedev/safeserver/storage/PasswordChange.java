@@ -0,0 +1,13 @@
+package youraveragedev.safeserver.storage;
+
+import java.util.UUID;
+
+/**
+ * 一条待持久化的密码变更；credential 为 null 表示删除该玩家的密码。
+ */
+public record PasswordChange(UUID playerUuid, Credential credential) {
+
+    public boolean isRemoval() {
+        return credential == null;
+    }
+}
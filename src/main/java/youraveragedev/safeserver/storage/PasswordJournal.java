@@ -0,0 +1,136 @@
+package youraveragedev.safeserver.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import youraveragedev.safeserver.metrics.SafeserverMetrics;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * 密码存储的追加式变更日志。
+ * 每次变更写入一行紧凑记录（"+uuid 凭据" 或 "-uuid"），加载时在快照之上按顺序重放，
+ * 日志超过阈值后由调用方写出新快照并清空日志，因此单次变更的写入开销与账户总数无关。
+ */
+public class PasswordJournal {
+    private static final Logger LOGGER = LoggerFactory.getLogger("safeserver-journal");
+
+    private static final char PUT_RECORD = '+';
+    private static final char REMOVE_RECORD = '-';
+
+    private final Path journalPath;
+    private FileChannel channel;
+    private long size;
+
+    public PasswordJournal(Path journalPath) {
+        this.journalPath = journalPath;
+    }
+
+    public Path getPath() {
+        return journalPath;
+    }
+
+    // 将日志中的记录按顺序重放到目标表，每条记录的 UUID 交给 replayedKeys，返回应用的记录数
+    public int replay(UuidCredentialMap target, Consumer<UUID> replayedKeys) throws IOException {
+        if (!Files.exists(journalPath)) {
+            return 0;
+        }
+        int applied = 0;
+        int lineNumber = 0;
+        try (BufferedReader reader = Files.newBufferedReader(journalPath, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isEmpty()) {
+                    continue;
+                }
+                char type = line.charAt(0);
+                try {
+                    if (type == PUT_RECORD) {
+                        int separator = line.indexOf(' ');
+                        if (separator > 1 && separator < line.length() - 1) {
+                            UUID playerUuid = UUID.fromString(line.substring(1, separator));
+                            target.put(playerUuid, Credential.fromStorageString(line.substring(separator + 1)));
+                            replayedKeys.accept(playerUuid);
+                            applied++;
+                            continue;
+                        }
+                    } else if (type == REMOVE_RECORD && line.length() > 1) {
+                        UUID playerUuid = UUID.fromString(line.substring(1));
+                        target.remove(playerUuid);
+                        replayedKeys.accept(playerUuid);
+                        applied++;
+                        continue;
+                    }
+                } catch (IllegalArgumentException ignored) {
+                    // 落到下方的无效记录处理
+                }
+                // 崩溃时可能留下写了一半的末行，跳过即可
+                LOGGER.warn("跳过密码日志 {} 第 {} 行的无效记录。", journalPath, lineNumber);
+            }
+        }
+        return applied;
+    }
+
+    // 以一次写入追加一批变更记录，并在返回前强制落盘
+    public void appendAll(List<PasswordChange> changes) throws IOException {
+        StringBuilder records = new StringBuilder(changes.size() * 104);
+        for (PasswordChange change : changes) {
+            if (change.isRemoval()) {
+                records.append(REMOVE_RECORD).append(change.playerUuid()).append('\n');
+            } else {
+                records.append(PUT_RECORD).append(change.playerUuid()).append(' ').append(change.credential().toStorageString()).append('\n');
+            }
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(records.toString().getBytes(StandardCharsets.UTF_8));
+        FileChannel out = openChannel();
+        while (buffer.hasRemaining()) {
+            size += out.write(buffer);
+        }
+        out.force(false);
+        SafeserverMetrics.BYTES_WRITTEN.add(buffer.capacity());
+    }
+
+    public long size() throws IOException {
+        if (channel != null) {
+            return size;
+        }
+        return Files.exists(journalPath) ? Files.size(journalPath) : 0L;
+    }
+
+    // 快照已落盘后清空日志
+    public void truncate() throws IOException {
+        openChannel().truncate(0);
+        size = 0;
+    }
+
+    public void close() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOGGER.error("关闭密码日志 {} 失败：{}", journalPath, e.getMessage());
+            }
+            channel = null;
+        }
+    }
+
+    private FileChannel openChannel() throws IOException {
+        if (channel == null) {
+            Files.createDirectories(journalPath.getParent());
+            channel = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            size = channel.size();
+        }
+        return channel;
+    }
+}
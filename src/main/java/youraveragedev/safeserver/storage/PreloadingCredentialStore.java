@@ -0,0 +1,125 @@
+package youraveragedev.safeserver.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiConsumer;
+
+/**
+ * 在后台线程加载凭据的存储包装，使凭据解析与世界加载并行。
+ * 加载完成前的任何读写（通常是第一个加入的玩家）会在就绪屏障上等待，
+ * 加载完成后只需读取一次 volatile 标记。
+ */
+public class PreloadingCredentialStore implements CredentialStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger("safeserver-storage");
+
+    private final CredentialStore delegate;
+
+    private final CompletableFuture<Void> loaded = new CompletableFuture<>();
+
+    // 加载完成后的快速路径，避免每次访问都经过 CompletableFuture
+    private volatile boolean ready;
+
+    public PreloadingCredentialStore(CredentialStore delegate) {
+        this.delegate = delegate;
+    }
+
+    // 启动后台加载线程后立即返回
+    @Override
+    public void load() {
+        Thread loader = new Thread(this::loadInBackground, "Safeserver-CredentialLoad");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    private void loadInBackground() {
+        long start = System.nanoTime();
+        try {
+            delegate.load();
+        } catch (RuntimeException e) {
+            LOGGER.error("后台加载凭据失败：{}", e.getMessage(), e);
+            loaded.completeExceptionally(e);
+            return;
+        }
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000L;
+        LOGGER.info("凭据后台加载完成，共 {} 个密码，用时 {} 毫秒。", delegate.size(), elapsedMillis);
+        ready = true;
+        loaded.complete(null);
+    }
+
+    public boolean isLoaded() {
+        return ready;
+    }
+
+    // 就绪屏障：加载完成前阻塞调用线程，加载失败时抛出 IllegalStateException
+    public void awaitLoaded() {
+        if (ready) {
+            return;
+        }
+        long start = System.nanoTime();
+        LOGGER.info("凭据尚未加载完成，等待后台加载...");
+        try {
+            loaded.join();
+        } catch (CompletionException e) {
+            throw new IllegalStateException("凭据加载失败", e.getCause());
+        }
+        LOGGER.info("凭据加载完成，等待 {} 毫秒。", (System.nanoTime() - start) / 1_000_000L);
+    }
+
+    @Override
+    public boolean contains(UUID playerUuid) {
+        awaitLoaded();
+        return delegate.contains(playerUuid);
+    }
+
+    @Override
+    public Credential get(UUID playerUuid) {
+        awaitLoaded();
+        return delegate.get(playerUuid);
+    }
+
+    @Override
+    public void put(UUID playerUuid, Credential credential) {
+        awaitLoaded();
+        delegate.put(playerUuid, credential);
+    }
+
+    @Override
+    public boolean remove(UUID playerUuid) {
+        awaitLoaded();
+        return delegate.remove(playerUuid);
+    }
+
+    @Override
+    public int size() {
+        awaitLoaded();
+        return delegate.size();
+    }
+
+    @Override
+    public void forEach(BiConsumer<UUID, Credential> action) {
+        awaitLoaded();
+        delegate.forEach(action);
+    }
+
+    @Override
+    public void flush() {
+        awaitLoaded();
+        delegate.flush();
+    }
+
+    @Override
+    public void close() {
+        awaitLoaded();
+        delegate.close();
+    }
+
+    // 刷盘调度器在加载前即已创建，统计读取无需等待
+    @Override
+    public CredentialFlusher getFlusher() {
+        return delegate.getFlusher();
+    }
+}
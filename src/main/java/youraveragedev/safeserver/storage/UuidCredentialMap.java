@@ -0,0 +1,257 @@
+package youraveragedev.safeserver.storage;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiConsumer;
+
+/**
+ * 以 UUID 的两个 long 分量为键的开放寻址凭据表。
+ * 键直接存放在 long 数组中（每个槽位两个 long），查询时无需把 UUID 转为字符串，
+ * 也没有 ConcurrentHashMap 的节点对象。读操作使用 StampedLock 乐观读，写操作互斥。
+ */
+public class UuidCredentialMap {
+    private static final int MIN_CAPACITY = 16;
+
+    // 键数组与值数组放在同一个对象中，乐观读时总能拿到一致的一对
+    private static final class Table {
+        final long[] keys;
+        final Credential[] values;
+
+        Table(int capacity) {
+            keys = new long[capacity * 2];
+            values = new Credential[capacity];
+        }
+    }
+
+    private final StampedLock lock = new StampedLock();
+    private volatile Table table;
+    private int size;
+
+    public UuidCredentialMap() {
+        this(0);
+    }
+
+    public UuidCredentialMap(int expectedSize) {
+        table = new Table(capacityFor(expectedSize));
+    }
+
+    public Credential get(UUID playerUuid) {
+        return get(playerUuid.getMostSignificantBits(), playerUuid.getLeastSignificantBits());
+    }
+
+    public Credential get(long msb, long lsb) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0L) {
+            Credential value = find(table, msb, lsb);
+            if (lock.validate(stamp)) {
+                return value;
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return find(table, msb, lsb);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public boolean containsKey(UUID playerUuid) {
+        return get(playerUuid) != null;
+    }
+
+    public Credential put(UUID playerUuid, Credential credential) {
+        long stamp = lock.writeLock();
+        try {
+            return putLocked(playerUuid, credential);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // 预先扩容到可容纳 expectedSize 个条目而不再触发扩容（用于批量加载前）
+    public void ensureCapacity(int expectedSize) {
+        int required = capacityFor(expectedSize);
+        long stamp = lock.writeLock();
+        try {
+            Table current = table;
+            if (current.values.length < required) {
+                table = rehash(current, required);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public Credential remove(UUID playerUuid) {
+        long stamp = lock.writeLock();
+        try {
+            return removeLocked(playerUuid);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // 在一次写锁内应用一批变更（credential 为 null 表示删除），读者不会看到只应用了一部分的状态
+    public void applyAll(List<PasswordChange> changes) {
+        long stamp = lock.writeLock();
+        try {
+            for (PasswordChange change : changes) {
+                if (change.isRemoval()) {
+                    removeLocked(change.playerUuid());
+                } else {
+                    putLocked(change.playerUuid(), change.credential());
+                }
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // 在读锁下复制键值数组，在锁外遍历这份一致的快照；回调（例如写出快照文件）期间不阻塞写操作
+    public void forEach(BiConsumer<UUID, Credential> action) {
+        long[] keys;
+        Credential[] values;
+        long stamp = lock.readLock();
+        try {
+            Table current = table;
+            keys = current.keys.clone();
+            values = current.values.clone();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        for (int i = 0; i < values.length; i++) {
+            Credential value = values[i];
+            if (value != null) {
+                action.accept(new UUID(keys[i * 2], keys[i * 2 + 1]), value);
+            }
+        }
+    }
+
+    // 以下两个方法由调用方持有写锁
+    private Credential putLocked(UUID playerUuid, Credential credential) {
+        long msb = playerUuid.getMostSignificantBits();
+        long lsb = playerUuid.getLeastSignificantBits();
+        Table current = table;
+        int mask = current.values.length - 1;
+        int index = mix(msb, lsb) & mask;
+        while (current.values[index] != null) {
+            if (current.keys[index * 2] == msb && current.keys[index * 2 + 1] == lsb) {
+                Credential previous = current.values[index];
+                current.values[index] = credential;
+                return previous;
+            }
+            index = (index + 1) & mask;
+        }
+        current.keys[index * 2] = msb;
+        current.keys[index * 2 + 1] = lsb;
+        current.values[index] = credential;
+        if (++size * 2 > current.values.length) {
+            table = rehash(current, current.values.length * 2);
+        }
+        return null;
+    }
+
+    private Credential removeLocked(UUID playerUuid) {
+        long msb = playerUuid.getMostSignificantBits();
+        long lsb = playerUuid.getLeastSignificantBits();
+        Table current = table;
+        long[] keys = current.keys;
+        Credential[] values = current.values;
+        int mask = values.length - 1;
+        int index = mix(msb, lsb) & mask;
+        while (values[index] != null) {
+            if (keys[index * 2] == msb && keys[index * 2 + 1] == lsb) {
+                Credential previous = values[index];
+                shiftBack(current, index);
+                size--;
+                return previous;
+            }
+            index = (index + 1) & mask;
+        }
+        return null;
+    }
+
+    private static Credential find(Table current, long msb, long lsb) {
+        long[] keys = current.keys;
+        Credential[] values = current.values;
+        int mask = values.length - 1;
+        int index = mix(msb, lsb) & mask;
+        // 乐观读期间表可能被修改，探测次数以容量为上限
+        for (int probes = 0; probes <= mask; probes++) {
+            Credential value = values[index];
+            if (value == null) {
+                return null;
+            }
+            if (keys[index * 2] == msb && keys[index * 2 + 1] == lsb) {
+                return value;
+            }
+            index = (index + 1) & mask;
+        }
+        return null;
+    }
+
+    // 线性探测的回移删除，不留墓碑
+    private static void shiftBack(Table current, int removed) {
+        long[] keys = current.keys;
+        Credential[] values = current.values;
+        int mask = values.length - 1;
+        int gap = removed;
+        int index = (removed + 1) & mask;
+        while (values[index] != null) {
+            int home = mix(keys[index * 2], keys[index * 2 + 1]) & mask;
+            // 若 home 不在 (gap, index] 区间内，则该条目可以前移填补空位
+            if (((index - home) & mask) >= ((index - gap) & mask)) {
+                keys[gap * 2] = keys[index * 2];
+                keys[gap * 2 + 1] = keys[index * 2 + 1];
+                values[gap] = values[index];
+                gap = index;
+            }
+            index = (index + 1) & mask;
+        }
+        values[gap] = null;
+    }
+
+    private static Table rehash(Table current, int newCapacity) {
+        Table resized = new Table(newCapacity);
+        int mask = newCapacity - 1;
+        for (int i = 0; i < current.values.length; i++) {
+            Credential value = current.values[i];
+            if (value == null) {
+                continue;
+            }
+            long msb = current.keys[i * 2];
+            long lsb = current.keys[i * 2 + 1];
+            int index = mix(msb, lsb) & mask;
+            while (resized.values[index] != null) {
+                index = (index + 1) & mask;
+            }
+            resized.keys[index * 2] = msb;
+            resized.keys[index * 2 + 1] = lsb;
+            resized.values[index] = value;
+        }
+        return resized;
+    }
+
+    private static int capacityFor(int expectedSize) {
+        int required = Math.max(MIN_CAPACITY, expectedSize * 2 + 1);
+        return Integer.highestOneBit(required - 1) << 1;
+    }
+
+    static int mix(long msb, long lsb) {
+        long h = msb ^ lsb;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+}
@@ -0,0 +1,460 @@
+package youraveragedev.safeserver.simulation;
+
+import youraveragedev.safeserver.AuthService;
+import youraveragedev.safeserver.AuthSession;
+import youraveragedev.safeserver.JoinAdmissionQueue;
+import youraveragedev.safeserver.PlayerStateManager;
+import youraveragedev.safeserver.auth.AuthPipeline;
+import youraveragedev.safeserver.auth.LoginThrottle;
+import youraveragedev.safeserver.auth.PasswordHashingEngine;
+import youraveragedev.safeserver.auth.SessionTicketCache;
+import youraveragedev.safeserver.gate.AuthGate;
+import youraveragedev.safeserver.metrics.LatencyHistogram;
+import youraveragedev.safeserver.metrics.SafeserverMetrics;
+import youraveragedev.safeserver.storage.CredentialStore;
+import youraveragedev.safeserver.storage.JournaledCredentialStore;
+import youraveragedev.safeserver.storage.MappedCredentialStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+/**
+ * 认证核心的无头负载模拟。
+ * 在单个模拟服务器线程上按 tick 驱动大量假玩家反复执行 加入 → 注册/登录（夹杂错误密码）→ 断开，
+ * 并穿插管理员重置密码与认证中途断开；哈希照常在认证流水线的工作线程上并发执行。
+ * 结束后报告吞吐、命令延迟分位数与每 tick 开销，并校验会话表、认证标记、凭据与玩家状态的一致性，
+ * 发现问题时以非零状态退出，可直接在 CI 上运行：./gradlew simulate --args="players=5000 cycles=50000"
+ *
+ * 默认 tickMillis=0，tick 连续执行不等待，限流参数按加速后的时间放宽、快速重连票据关闭；
+ * tickMillis=50 时按真实节奏运行。
+ */
+public final class LoadSimulation {
+
+    private enum BotState {
+        OFFLINE,
+        // 在认证中，等待输入 /login 或 /setpassword
+        AWAITING,
+        // 命令已提交，等待流水线回调
+        SUBMITTED,
+        AUTHENTICATED
+    }
+
+    private static final class Bot {
+        final SimulatedPlayer player;
+        BotState state = BotState.OFFLINE;
+        long nextTick;
+        // 服务器上应存在的密码，null 表示未注册
+        String password;
+        long submittedAtNanos;
+        boolean submittedCorrect;
+        // 本次在线是否在完成认证前断开
+        boolean abandons;
+        int generation;
+
+        Bot(SimulatedPlayer player) {
+            this.player = player;
+        }
+    }
+
+    private final Map<String, String> options;
+    private final SplittableRandom random;
+
+    private final int playerCount;
+    private final long targetCycles;
+    private final long tickMillis;
+    private final long maxTicks;
+    private final double wrongPasswordRate;
+    private final double abandonRate;
+    private final double resetRate;
+    private final double quickRejoinRate;
+
+    private final SimulatedServer server = new SimulatedServer();
+    private final JoinAdmissionQueue admissionQueue;
+    private final AuthPipeline authPipeline;
+    private final CredentialStore credentialStore;
+    private final PlayerStateManager stateManager;
+    private final AuthService authService;
+    private final Path dataDirectory;
+    private final Bot[] bots;
+
+    private final LatencyHistogram tickCost = new LatencyHistogram("sim_tick_seconds", "每 tick 服务器线程耗时", 10_000L, 16);
+    private final LatencyHistogram commandLatency = new LatencyHistogram("sim_command_seconds", "命令提交到结果回调的耗时", 100_000L, 16);
+
+    private long tick;
+    private long completedCycles;
+    private long abandonedCycles;
+    private long resumedJoins;
+    private long wrongPasswordAttempts;
+    private long passwordResets;
+    private long rejectedThrottled;
+    private long rejectedDuplicate;
+    private long rejectedBusy;
+
+    private LoadSimulation(Map<String, String> options) throws IOException {
+        this.options = options;
+        this.random = new SplittableRandom(getLong("seed", 42L));
+        this.playerCount = getInt("players", 2000);
+        this.targetCycles = getLong("cycles", 20_000L);
+        this.tickMillis = getLong("tickMillis", 0L);
+        this.maxTicks = getLong("maxTicks", 2_000_000L);
+        this.wrongPasswordRate = getDouble("wrongPasswordRate", 0.2);
+        this.abandonRate = getDouble("abandonRate", 0.02);
+        this.resetRate = getDouble("resetRate", 0.02);
+        this.quickRejoinRate = getDouble("quickRejoinRate", 0.3);
+
+        dataDirectory = Files.createTempDirectory("safeserver-simulation");
+        Path passwordFile = dataDirectory.resolve("passwords.json");
+        long flushDelayMillis = getLong("flushMaxDelayMillis", 200L);
+        credentialStore = getString("backend", "json").equalsIgnoreCase("mapped")
+                ? new MappedCredentialStore(dataDirectory.resolve("passwords.bin"), passwordFile, flushDelayMillis)
+                : new JournaledCredentialStore(passwordFile, flushDelayMillis);
+        credentialStore.load();
+
+        admissionQueue = new JoinAdmissionQueue(getLong("tickBudgetMillis", 5L));
+        authPipeline = new AuthPipeline(getInt("workerThreads", 2), getInt("queueCapacity", 256));
+        LoginThrottle loginThrottle = new LoginThrottle(
+                getInt("throttleSlots", 16_384),
+                getInt("playerBurst", 5), getInt("playerPerMinute", 6_000),
+                getInt("addressBurst", 50), getInt("addressPerMinute", 60_000),
+                getLong("backoffBaseMillis", 20L), getLong("backoffMaxMillis", 500L));
+        // 加速运行时几乎所有重连都落在票据有效期内，会绕过认证，因此默认只在真实节奏下启用快速重连
+        SessionTicketCache sessionTickets = new SessionTicketCache(getLong("resumeTtlSeconds", tickMillis > 0 ? 60L : 0L), getInt("resumeMaxEntries", 1024));
+        stateManager = new PlayerStateManager(admissionQueue, server, server);
+        // 模拟关注的是流水线与服务器线程开销，默认使用较低的迭代次数以缩短运行时间
+        PasswordHashingEngine hashingEngine = new PasswordHashingEngine(getInt("hashIterations", 1_000));
+        // 登录阶段握手发生在玩家实体创建之前，不在模拟范围内
+        authService = new AuthService(credentialStore, stateManager, admissionQueue, authPipeline,
+                hashingEngine, loginThrottle, sessionTickets, null, server);
+        authService.registerMetricGauges();
+
+        int playersPerAddress = Math.max(1, getInt("playersPerAddress", 4));
+        double operatorRate = getDouble("operatorRate", 0.01);
+        bots = new Bot[playerCount];
+        for (int i = 0; i < playerCount; i++) {
+            UUID uuid = new UUID(random.nextLong(), random.nextLong());
+            int host = i / playersPerAddress;
+            String address = "10." + ((host >> 16) & 0xFF) + "." + ((host >> 8) & 0xFF) + "." + (host & 0xFF);
+            bots[i] = new Bot(new SimulatedPlayer(uuid, "bot" + i, address, random.nextDouble() < operatorRate, server));
+            bots[i].nextTick = random.nextInt(20);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator > 0) {
+                options.put(arg.substring(0, separator).trim(), arg.substring(separator + 1).trim());
+            }
+        }
+        LoadSimulation simulation = new LoadSimulation(options);
+        boolean passed;
+        try {
+            passed = simulation.run();
+        } finally {
+            simulation.deleteDataDirectory();
+        }
+        // 流水线与刷盘线程均为守护线程，这里直接以结果作为退出码
+        System.exit(passed ? 0 : 1);
+    }
+
+    private boolean run() {
+        System.out.printf(Locale.ROOT, "负载模拟：%d 名玩家，目标 %d 个循环，选项 %s%n", playerCount, targetCycles, options);
+        long startNanos = System.nanoTime();
+
+        boolean drained = false;
+        while (tick < maxTicks) {
+            long tickStart = System.nanoTime();
+            server.runTasks();
+            boolean stopping = completedCycles + abandonedCycles >= targetCycles;
+            for (Bot bot : bots) {
+                if (bot.nextTick <= tick) {
+                    step(bot, stopping);
+                }
+            }
+            authService.runAdmission();
+            tickCost.record(System.nanoTime() - tickStart);
+            tick++;
+
+            if (stopping && isIdle()) {
+                drained = true;
+                break;
+            }
+            if (tickMillis > 0) {
+                long remaining = tickMillis * 1_000_000L - (System.nanoTime() - tickStart);
+                if (remaining > 0) {
+                    LockSupport.parkNanos(remaining);
+                }
+            }
+        }
+
+        long elapsedNanos = System.nanoTime() - startNanos;
+        authService.shutdown();
+        if (!drained) {
+            server.reportViolation("在 " + maxTicks + " 个 tick 内未能完成全部循环");
+        }
+        verifyFinalState();
+        report(elapsedNanos);
+        return server.getViolationCount() == 0;
+    }
+
+    private void step(Bot bot, boolean stopping) {
+        switch (bot.state) {
+            case OFFLINE -> {
+                if (!stopping) {
+                    join(bot);
+                }
+            }
+            case AWAITING -> {
+                if (stopping || bot.abandons) {
+                    disconnect(bot);
+                    abandonedCycles++;
+                } else {
+                    submit(bot);
+                }
+            }
+            case AUTHENTICATED -> {
+                if (!stopping && bot.password != null && random.nextDouble() < resetRate) {
+                    adminReset(bot);
+                } else {
+                    disconnect(bot);
+                    completedCycles++;
+                }
+            }
+            case SUBMITTED -> {
+                // 等待流水线回调
+            }
+        }
+    }
+
+    private void join(Bot bot) {
+        SimulatedPlayer player = bot.player;
+        server.connect(player);
+        bot.abandons = random.nextDouble() < abandonRate;
+        authService.onPlayerJoin(player);
+        if (authService.isPlayerAuthenticating(player.getUuid())) {
+            bot.state = BotState.AWAITING;
+            bot.nextTick = tick + 1 + random.nextInt(3);
+        } else {
+            if (bot.password == null) {
+                server.reportViolation(player.getName() + " 未注册却跳过了认证");
+            }
+            resumedJoins++;
+            bot.state = BotState.AUTHENTICATED;
+            bot.nextTick = tick + 5 + random.nextInt(40);
+        }
+    }
+
+    private void disconnect(Bot bot) {
+        SimulatedPlayer player = bot.player;
+        authService.onPlayerDisconnect(player);
+        server.disconnect(player);
+        if (player.isInLimbo()) {
+            server.reportViolation(player.getName() + " 断开时仍处于等待区状态");
+        }
+        bot.state = BotState.OFFLINE;
+        bot.generation++;
+        bot.nextTick = tick + (random.nextDouble() < quickRejoinRate ? 1 + random.nextInt(20) : 20 + random.nextInt(200));
+    }
+
+    private void adminReset(Bot bot) {
+        UUID playerUuid = bot.player.getUuid();
+        if (!authService.resetPlayerPassword(playerUuid)) {
+            server.reportViolation(bot.player.getName() + " 的密码无法重置");
+            return;
+        }
+        passwordResets++;
+        bot.password = null;
+        // 包括认证已通过、恢复状态尚未执行的玩家：重置后必须回到等待区重新设置密码
+        AuthSession session = stateManager.getSession(playerUuid);
+        if (session == null || session.state() != AuthSession.State.PENDING_REGISTER) {
+            server.reportViolation(bot.player.getName() + " 被重置密码后仍保持已认证");
+        } else if (!bot.player.isInLimbo()) {
+            server.reportViolation(bot.player.getName() + " 被重置密码后未进入等待区");
+        }
+        bot.state = BotState.AWAITING;
+        bot.nextTick = tick + 1 + random.nextInt(3);
+    }
+
+    // 管理员在 /login 校验期间重置密码：校验结果必须作废，玩家留在认证中重新设置密码
+    private void resetDuringVerification(Bot bot) {
+        UUID playerUuid = bot.player.getUuid();
+        if (!authService.resetPlayerPassword(playerUuid)) {
+            server.reportViolation(bot.player.getName() + " 的密码无法在校验期间重置");
+            return;
+        }
+        passwordResets++;
+        bot.password = null;
+        bot.submittedCorrect = false;
+        if (!authService.isPlayerAuthenticating(playerUuid)) {
+            server.reportViolation(bot.player.getName() + " 在校验期间被重置密码后不在认证中");
+        }
+    }
+
+    private void submit(Bot bot) {
+        UUID playerUuid = bot.player.getUuid();
+        int generation = bot.generation;
+        bot.state = BotState.SUBMITTED;
+        bot.submittedAtNanos = System.nanoTime();
+
+        AuthPipeline.Status status;
+        if (bot.password == null) {
+            String password = "pw-" + Long.toHexString(random.nextLong());
+            bot.submittedCorrect = true;
+            status = authService.registerPlayer(playerUuid, password, server,
+                    success -> onResult(bot, generation, success, password));
+        } else {
+            boolean correct = random.nextDouble() >= wrongPasswordRate;
+            bot.submittedCorrect = correct;
+            status = authService.authenticatePlayer(playerUuid, correct ? bot.password : "wrong-" + bot.password, server,
+                    success -> onResult(bot, generation, success, bot.password));
+        }
+
+        if (status == AuthPipeline.Status.ACCEPTED) {
+            if (!bot.submittedCorrect) {
+                wrongPasswordAttempts++;
+            }
+            if (bot.password != null && random.nextDouble() < resetRate) {
+                resetDuringVerification(bot);
+            }
+            return;
+        }
+        switch (status) {
+            case THROTTLED -> rejectedThrottled++;
+            case DUPLICATE -> rejectedDuplicate++;
+            default -> rejectedBusy++;
+        }
+        // 被拒绝的玩家看到提示后过一两秒再试
+        bot.state = BotState.AWAITING;
+        bot.nextTick = tick + 20 + random.nextInt(40);
+    }
+
+    // 在模拟的服务器线程上回调
+    private void onResult(Bot bot, int generation, boolean success, String password) {
+        if (bot.generation != generation || bot.state != BotState.SUBMITTED) {
+            server.reportViolation(bot.player.getName() + " 收到了过期的认证结果");
+            return;
+        }
+        commandLatency.record(System.nanoTime() - bot.submittedAtNanos);
+        if (success != bot.submittedCorrect) {
+            server.reportViolation(bot.player.getName() + (success ? " 使用错误密码通过了认证" : " 使用正确密码认证失败"));
+        }
+        if (success) {
+            bot.password = password;
+            bot.state = BotState.AUTHENTICATED;
+            bot.nextTick = tick + 5 + random.nextInt(40);
+            if (random.nextDouble() < resetRate) {
+                // 认证刚通过、恢复状态仍在入场队列中时被管理员重置
+                adminReset(bot);
+            }
+        } else {
+            bot.state = BotState.AWAITING;
+            bot.nextTick = tick + 1 + random.nextInt(5);
+        }
+    }
+
+    private boolean isIdle() {
+        for (Bot bot : bots) {
+            if (bot.state != BotState.OFFLINE) {
+                return false;
+            }
+        }
+        return !server.hasPendingTasks() && admissionQueue.size() == 0 && authPipeline.getQueueDepth() == 0;
+    }
+
+    private void verifyFinalState() {
+        if (authService.getSessionCount() != 0) {
+            server.reportViolation("全部玩家断开后仍有 " + authService.getSessionCount() + " 个认证会话");
+        }
+        if (AuthGate.isAnyoneAuthenticating()) {
+            server.reportViolation("全部玩家断开后认证计数不为 0");
+        }
+        int registered = 0;
+        for (Bot bot : bots) {
+            if (bot.player.isAuthGated()) {
+                server.reportViolation(bot.player.getName() + " 离线后仍带有认证标记");
+            }
+            boolean stored = authService.hasPassword(bot.player.getUuid());
+            if (stored != (bot.password != null)) {
+                server.reportViolation(bot.player.getName() + (stored ? " 的密码应已被重置" : " 的密码丢失"));
+            }
+            if (bot.password != null) {
+                registered++;
+            }
+        }
+        if (authService.getCredentialCount() != registered) {
+            server.reportViolation("凭据数 " + authService.getCredentialCount() + " 与已注册玩家数 " + registered + " 不一致");
+        }
+    }
+
+    private void report(long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        System.out.println();
+        System.out.printf(Locale.ROOT, "用时 %.2f 秒，共 %d 个 tick%n", seconds, tick);
+        System.out.printf(Locale.ROOT, "完成循环 %d 个（%.1f 个/秒），中途放弃 %d 个，快速重连 %d 次%n",
+                completedCycles, completedCycles / seconds, abandonedCycles, resumedJoins);
+        System.out.printf(Locale.ROOT, "错误密码 %d 次，管理员重置 %d 次；被拒绝：限流 %d，重复 %d，队列已满 %d%n",
+                wrongPasswordAttempts, passwordResets, rejectedThrottled, rejectedDuplicate, rejectedBusy);
+        System.out.printf(Locale.ROOT, "命令延迟：%d 次，p50 %s，p99 %s，p99.9 %s%n", commandLatency.getCount(),
+                formatNanos(commandLatency.percentileNanos(0.5)), formatNanos(commandLatency.percentileNanos(0.99)),
+                formatNanos(commandLatency.percentileNanos(0.999)));
+        System.out.printf(Locale.ROOT, "每 tick 开销：平均 %s，p50 %s，p99 %s，p99.9 %s%n",
+                formatNanos(tickCost.getSumNanos() / Math.max(1, tickCost.getCount())),
+                formatNanos(tickCost.percentileNanos(0.5)), formatNanos(tickCost.percentileNanos(0.99)),
+                formatNanos(tickCost.percentileNanos(0.999)));
+        for (String line : SafeserverMetrics.summary()) {
+            System.out.println(line);
+        }
+        System.out.println();
+        if (server.getViolationCount() == 0) {
+            System.out.println("一致性检查通过。");
+        } else {
+            System.out.printf(Locale.ROOT, "一致性检查失败：%d 处问题%n", server.getViolationCount());
+            server.getViolations().forEach(violation -> System.out.println("  " + violation));
+        }
+    }
+
+    // 直方图分位数为桶上界
+    private static String formatNanos(long nanos) {
+        if (nanos >= 1_000_000L) {
+            return String.format(Locale.ROOT, "≤%.1fms", nanos / 1e6);
+        }
+        return String.format(Locale.ROOT, "≤%.1fµs", nanos / 1e3);
+    }
+
+    private void deleteDataDirectory() throws IOException {
+        try (Stream<Path> files = Files.walk(dataDirectory)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    private String getString(String key, String defaultValue) {
+        return options.getOrDefault(key, defaultValue);
+    }
+
+    private int getInt(String key, int defaultValue) {
+        String value = options.get(key);
+        return value != null ? Integer.parseInt(value) : defaultValue;
+    }
+
+    private long getLong(String key, long defaultValue) {
+        String value = options.get(key);
+        return value != null ? Long.parseLong(value) : defaultValue;
+    }
+
+    private double getDouble(String key, double defaultValue) {
+        String value = options.get(key);
+        return value != null ? Double.parseDouble(value) : defaultValue;
+    }
+}
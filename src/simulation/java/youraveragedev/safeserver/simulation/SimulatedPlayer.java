@@ -0,0 +1,136 @@
+package youraveragedev.safeserver.simulation;
+
+import youraveragedev.safeserver.platform.PlayerHandle;
+import youraveragedev.safeserver.platform.PlayerSnapshot;
+import youraveragedev.safeserver.platform.SpawnPoint;
+
+import java.util.UUID;
+
+/**
+ * 内存中的假玩家。记录等待区进出，发现与真实服务器上会出错的调用顺序时向模拟服务器报告。
+ * 除认证标记外只在模拟的服务器线程上访问。
+ */
+final class SimulatedPlayer implements PlayerHandle {
+
+    private record Snapshot(SpawnPoint position, String gameMode) implements PlayerSnapshot {
+    }
+
+    private final UUID uuid;
+    private final String name;
+    private final String address;
+    private final boolean operator;
+    private final SimulatedServer server;
+
+    private volatile boolean gated;
+    private SpawnPoint position;
+    private String gameMode = "survival";
+    private boolean inLimbo;
+    private int messages;
+    private int commandTreeUpdates;
+
+    SimulatedPlayer(UUID uuid, String name, String address, boolean operator, SimulatedServer server) {
+        this.uuid = uuid;
+        this.name = name;
+        this.address = address;
+        this.operator = operator;
+        this.server = server;
+        this.position = new SpawnPoint(uuid.getMostSignificantBits() % 10_000, 70.0, uuid.getLeastSignificantBits() % 10_000);
+    }
+
+    @Override
+    public UUID getUuid() {
+        return uuid;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getAddress() {
+        return address;
+    }
+
+    // 模拟玩家没有真实连接，以自身作为连接标识
+    @Override
+    public Object getConnection() {
+        return this;
+    }
+
+    @Override
+    public boolean isOperator() {
+        return operator;
+    }
+
+    @Override
+    public void sendMessage(String message) {
+        messages++;
+    }
+
+    @Override
+    public boolean isAuthGated() {
+        return gated;
+    }
+
+    @Override
+    public void setAuthGated(boolean gated) {
+        this.gated = gated;
+    }
+
+    @Override
+    public PlayerSnapshot captureState() {
+        if (inLimbo) {
+            server.reportViolation(name + " 在等待区内被再次记录原始状态");
+        }
+        return new Snapshot(position, gameMode);
+    }
+
+    @Override
+    public void enterLimbo(SpawnPoint limbo) {
+        if (inLimbo) {
+            server.reportViolation(name + " 重复进入等待区");
+        }
+        if (!server.isOnline(uuid)) {
+            server.reportViolation(name + " 离线后仍被设置认证状态");
+        }
+        inLimbo = true;
+        position = limbo;
+        gameMode = "spectator";
+    }
+
+    @Override
+    public boolean restoreState(PlayerSnapshot original) {
+        if (!inLimbo) {
+            server.reportViolation(name + " 未在等待区却被恢复状态");
+        }
+        if (original instanceof Snapshot snapshot) {
+            position = snapshot.position();
+            gameMode = snapshot.gameMode();
+        }
+        inLimbo = false;
+        return true;
+    }
+
+    @Override
+    public void refreshCommandTree() {
+        commandTreeUpdates++;
+    }
+
+    // 模拟客户端没有安装伴随模组
+    @Override
+    public void sendCompanionKey(byte[] key) {
+    }
+
+    boolean isInLimbo() {
+        return inLimbo;
+    }
+
+    int getMessages() {
+        return messages;
+    }
+
+    int getCommandTreeUpdates() {
+        return commandTreeUpdates;
+    }
+}
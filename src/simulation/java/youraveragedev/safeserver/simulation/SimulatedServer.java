@@ -0,0 +1,94 @@
+package youraveragedev.safeserver.simulation;
+
+import youraveragedev.safeserver.platform.PlayerHandle;
+import youraveragedev.safeserver.platform.ServerFacade;
+import youraveragedev.safeserver.platform.SpawnLocator;
+import youraveragedev.safeserver.platform.SpawnPoint;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 模拟服务器：在线玩家表、等待区坐标，以及与 MinecraftServer 一样在 tick 中执行的任务队列
+ * （认证流水线把结果投递到这里，由模拟的服务器线程执行）。
+ */
+final class SimulatedServer implements ServerFacade, SpawnLocator, Executor {
+    private static final SpawnPoint LIMBO = new SpawnPoint(0.5, 65.0, 0.5);
+    private static final int MAX_RECORDED_VIOLATIONS = 20;
+
+    private final Map<UUID, SimulatedPlayer> online = new ConcurrentHashMap<>();
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicLong violationCount = new AtomicLong();
+    private final List<String> violations = new ArrayList<>();
+
+    void connect(SimulatedPlayer player) {
+        if (online.putIfAbsent(player.getUuid(), player) != null) {
+            reportViolation(player.getName() + " 重复加入");
+        }
+    }
+
+    void disconnect(SimulatedPlayer player) {
+        online.remove(player.getUuid());
+    }
+
+    boolean isOnline(UUID playerUuid) {
+        return online.containsKey(playerUuid);
+    }
+
+    int getOnlineCount() {
+        return online.size();
+    }
+
+    @Override
+    public PlayerHandle getPlayer(UUID playerUuid) {
+        return online.get(playerUuid);
+    }
+
+    @Override
+    public SpawnPoint getLimboSpawn() {
+        return LIMBO;
+    }
+
+    // 认证流水线在工作线程上调用，与 MinecraftServer.execute 相同
+    @Override
+    public void execute(Runnable task) {
+        tasks.add(task);
+    }
+
+    // 在模拟的服务器线程上执行已投递的任务，返回执行数
+    int runTasks() {
+        int executed = 0;
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+            executed++;
+        }
+        return executed;
+    }
+
+    boolean hasPendingTasks() {
+        return !tasks.isEmpty();
+    }
+
+    synchronized void reportViolation(String description) {
+        violationCount.incrementAndGet();
+        if (violations.size() < MAX_RECORDED_VIOLATIONS) {
+            violations.add(description);
+        }
+    }
+
+    long getViolationCount() {
+        return violationCount.get();
+    }
+
+    synchronized List<String> getViolations() {
+        return new ArrayList<>(violations);
+    }
+}